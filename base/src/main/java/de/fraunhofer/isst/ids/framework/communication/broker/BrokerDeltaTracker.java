@@ -0,0 +1,165 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.fraunhofer.isst.ids.framework.util.IDSUtils;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Tracks which version of the self-description was last sent to each broker: a hash of the connector-level
+ * metadata (everything except the resources) and a hash per resource ID. Used to send only the resources that
+ * changed since the last update.
+ */
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+class BrokerDeltaTracker {
+
+    static final String RESOURCE_CATALOG = "ids:resourceCatalog";
+    static final String[] RESOURCE_LISTS = {"ids:offeredResource", "ids:requestedResource"};
+
+    Map<String, BrokerState> states = new ConcurrentHashMap<>();
+    AtomicReference<Snapshot> lastSnapshot = new AtomicReference<>();
+
+    /**
+     * Compute the hashes of a serialized self-description. The last snapshot is reused while the
+     * (cached) self-description is the same array.
+     *
+     * @param selfDescription the UTF-8 bytes of the self-description, as returned by the ConfigurationContainer
+     * @return the snapshot of the self-description
+     */
+    Snapshot snapshot(final byte[] selfDescription) {
+        final var last = lastSnapshot.get();
+        if (last != null && last.source == selfDescription) {
+            return last;
+        }
+
+        final var connector = new JSONObject(new JSONTokener(
+                new InputStreamReader(new ByteArrayInputStream(selfDescription), StandardCharsets.UTF_8)));
+        final var resourceHashes = new LinkedHashMap<URI, String>();
+        final var catalogs = asArray(connector.opt(RESOURCE_CATALOG));
+        for (var i = 0; i < catalogs.length(); i++) {
+            final var catalog = catalogs.optJSONObject(i);
+            if (catalog == null) {
+                continue;
+            }
+            for (final var list : RESOURCE_LISTS) {
+                final var resources = asArray(catalog.remove(list));
+                for (var j = 0; j < resources.length(); j++) {
+                    final var resource = resources.optJSONObject(j);
+                    if (resource != null && resource.has("@id")) {
+                        resourceHashes.put(URI.create(resource.getString("@id")), hash(resource.toString()));
+                    }
+                }
+            }
+        }
+        //catalogs without their resources are part of the connector-level metadata
+        final var snapshot = new Snapshot(selfDescription, hash(connector.toString()), resourceHashes);
+        lastSnapshot.set(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * @param brokerURI URI of a broker
+     * @return the state of the broker, synchronize on it while sending updates
+     */
+    BrokerState state(final String brokerURI) {
+        return states.computeIfAbsent(brokerURI, uri -> new BrokerState());
+    }
+
+    /**
+     * Forget what was sent to a broker, the next delta update will be a full update.
+     *
+     * @param brokerURI URI of a broker
+     */
+    void forget(final String brokerURI) {
+        states.remove(brokerURI);
+    }
+
+    /**
+     * @param value a JSON-LD value
+     * @return the value as array (a single value is wrapped)
+     */
+    private static JSONArray asArray(final Object value) {
+        if (value instanceof JSONArray) {
+            return (JSONArray) value;
+        }
+        final var array = new JSONArray();
+        if (value != null) {
+            array.put(value);
+        }
+        return array;
+    }
+
+    /**
+     * @param value a string
+     * @return the SHA-256 hash of the string
+     */
+    private static String hash(final String value) {
+        try {
+            return IDSUtils.hash(MessageDigest.getInstance("SHA-256"), value);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hashes of a serialized self-description.
+     */
+    @Getter
+    @AllArgsConstructor
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    static class Snapshot {
+        byte[] source;
+        String connectorHash;
+        Map<URI, String> resourceHashes;
+    }
+
+    /**
+     * What was last sent to a broker, guarded by the monitor of the object.
+     */
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    static class BrokerState {
+        String connectorHash;
+        final Map<URI, String> resourceHashes = new HashMap<>();
+
+        /**
+         * @return hash of the connector-level metadata last sent, null if no full update was sent
+         */
+        String getConnectorHash() {
+            return connectorHash;
+        }
+
+        /**
+         * @return hashes of the resources last sent by resource ID
+         */
+        Map<URI, String> getResourceHashes() {
+            return resourceHashes;
+        }
+
+        /**
+         * Record a successful full update.
+         *
+         * @param snapshot the snapshot of the sent self-description
+         */
+        void fullUpdateSent(final Snapshot snapshot) {
+            connectorHash = snapshot.getConnectorHash();
+            resourceHashes.clear();
+            resourceHashes.putAll(snapshot.getResourceHashes());
+        }
+    }
+}
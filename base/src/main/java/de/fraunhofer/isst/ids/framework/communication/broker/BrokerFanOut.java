@@ -0,0 +1,250 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Sends requests to several brokers in parallel, with at most maxConcurrency requests in flight and a deadline
+ * for every single request. The outcome of every request (response or error) is collected per key.
+ *
+ * @param <K> key identifying a request (e.g. the broker URI)
+ */
+@Slf4j
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+class BrokerFanOut<K> {
+
+    OkHttpClient client;
+    int maxConcurrency;
+    Duration deadline;
+
+    /**
+     * Create a BrokerFanOut.
+     *
+     * @param client the client sending the requests
+     * @param maxConcurrency maximum number of requests in flight
+     * @param deadline maximum duration of a single request (including reading the response body)
+     */
+    BrokerFanOut(final OkHttpClient client, final int maxConcurrency, final Duration deadline) {
+        this.client = client;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.deadline = deadline;
+    }
+
+    /**
+     * Send all requests.
+     *
+     * @param requests the requests by key
+     * @return future completed when all requests are done, with the results in the order of the given map;
+     * cancelling it cancels all running and pending requests
+     */
+    CompletableFuture<Map<K, BrokerResult>> send(final Map<K, Request> requests) {
+        final var run = new Run(requests);
+        if (requests.isEmpty()) {
+            run.result.complete(Map.of());
+            return run.result;
+        }
+        for (var i = 0; i < Math.min(maxConcurrency, requests.size()); i++) {
+            run.startNext();
+        }
+        run.result.whenComplete((map, error) -> {
+            if (run.result.isCancelled()) {
+                run.cancel();
+            }
+        });
+        return run.result;
+    }
+
+    /**
+     * Create the result for a received response, reading its body into memory. The given response is not closed.
+     *
+     * @param brokerUri URI of the broker
+     * @param response the response of the broker
+     * @param duration duration of the request
+     * @return the BrokerResult with a buffered copy of the response
+     * @throws IOException if the body of the response could not be read
+     */
+    static BrokerResult received(final String brokerUri, final Response response, final Duration duration) throws IOException {
+        final var body = response.body();
+        final var bytes = body != null ? body.bytes() : new byte[0];
+        final var contentType = body != null ? body.contentType() : null;
+        final var buffered = response.newBuilder()
+                .body(ResponseBody.create(bytes, contentType))
+                .build();
+        return BrokerResult.received(brokerUri, buffered, new String(bytes, charsetOf(contentType)), duration);
+    }
+
+    /**
+     * @param contentType the content type of a response body
+     * @return the charset of the content type, UTF-8 if unknown
+     */
+    private static Charset charsetOf(final MediaType contentType) {
+        final var charset = contentType != null ? contentType.charset() : null;
+        return charset != null ? charset : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * State of a single fan-out.
+     */
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    private class Run {
+        Map<K, Request> requests;
+        List<K> keys;
+        Queue<K> pending;
+        AtomicInteger remaining;
+        Map<K, BrokerResult> results = new ConcurrentHashMap<>();
+        Queue<Call> calls = new ConcurrentLinkedQueue<>();
+        CompletableFuture<Map<K, BrokerResult>> result = new CompletableFuture<>();
+
+        Run(final Map<K, Request> requests) {
+            this.requests = requests;
+            this.keys = new ArrayList<>(requests.keySet());
+            this.pending = new ConcurrentLinkedQueue<>(keys);
+            this.remaining = new AtomicInteger(keys.size());
+        }
+
+        /**
+         * Enqueue the next pending request, if there is one.
+         */
+        void startNext() {
+            final var key = pending.poll();
+            if (key == null) {
+                return;
+            }
+            final var request = requests.get(key);
+            final var brokerUri = request.url().toString();
+            final var call = client.newCall(request);
+            if (deadline != null) {
+                call.timeout().timeout(deadline.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            calls.add(call);
+            final var start = System.nanoTime();
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(final Call failedCall, final IOException e) {
+                    if (log.isWarnEnabled()) {
+                        log.warn(String.format("Connection to Broker %s failed: %s", brokerUri, e.getMessage()));
+                    }
+                    done(key, BrokerResult.failed(brokerUri, e, Duration.ofNanos(System.nanoTime() - start)));
+                }
+
+                @Override
+                public void onResponse(final Call respondedCall, final Response response) {
+                    final BrokerResult brokerResult;
+                    try (response) {
+                        if (!response.isSuccessful() && log.isWarnEnabled()) {
+                            log.warn(String.format("Response of the Broker %s wasn't successful!", brokerUri));
+                        }
+                        brokerResult = received(brokerUri, response, Duration.ofNanos(System.nanoTime() - start));
+                    } catch (IOException e) {
+                        onFailure(respondedCall, e);
+                        return;
+                    } catch (RuntimeException e) {
+                        if (log.isWarnEnabled()) {
+                            log.warn(String.format("Response of the Broker %s could not be read: %s", brokerUri, e.getMessage()));
+                        }
+                        done(key, BrokerResult.failed(brokerUri, e, Duration.ofNanos(System.nanoTime() - start)));
+                        return;
+                    }
+                    done(key, brokerResult);
+                }
+            });
+        }
+
+        /**
+         * Store the result of a request, start the next one and complete the fan-out after the last one.
+         *
+         * @param key the key of the request
+         * @param brokerResult the outcome of the request
+         */
+        void done(final K key, final BrokerResult brokerResult) {
+            results.put(key, brokerResult);
+            startNext();
+            if (remaining.decrementAndGet() == 0) {
+                final var ordered = new LinkedHashMap<K, BrokerResult>();
+                keys.forEach(k -> ordered.put(k, results.get(k)));
+                result.complete(ordered);
+            }
+        }
+
+        /**
+         * Cancel all running and pending requests.
+         */
+        void cancel() {
+            pending.clear();
+            calls.forEach(Call::cancel);
+        }
+    }
+
+    /**
+     * Convert the results of a fan-out to the list of received responses.
+     *
+     * @param results the results of a fan-out
+     * @return the buffered responses of all brokers that answered, in the order of the results
+     */
+    static List<Response> responses(final Map<?, BrokerResult> results) {
+        final var responses = new ArrayList<Response>();
+        for (final var brokerResult : results.values()) {
+            if (brokerResult.getResponse() != null) {
+                responses.add(brokerResult.getResponse());
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * Convert the responses of brokers that were contacted without a fan-out to results, the inverse of
+     * {@link #responses(Map)}. Responses are matched to the brokers by their request url, brokers without a
+     * response get a failed result.
+     *
+     * @param brokerUris URIs of the contacted brokers
+     * @param responses the buffered responses of the brokers that answered
+     * @return the results by broker URI, in the order of the given list
+     */
+    static Map<String, BrokerResult> results(final List<String> brokerUris, final List<Response> responses) {
+        final var byUrl = new HashMap<HttpUrl, Response>();
+        for (final var response : responses) {
+            byUrl.putIfAbsent(response.request().url(), response);
+        }
+        final var results = new LinkedHashMap<String, BrokerResult>();
+        for (final var brokerUri : brokerUris) {
+            final var url = HttpUrl.parse(brokerUri);
+            final var response = url != null ? byUrl.get(url) : null;
+            if (response == null) {
+                results.put(brokerUri, BrokerResult.failed(brokerUri, new IOException("No response from broker"), Duration.ZERO));
+                continue;
+            }
+            try {
+                results.put(brokerUri, BrokerResult.received(brokerUri, response,
+                                                             response.peekBody(Long.MAX_VALUE).string(), Duration.ZERO));
+            } catch (IOException e) {
+                results.put(brokerUri, BrokerResult.failed(brokerUri, e, Duration.ZERO));
+            }
+        }
+        return results;
+    }
+}
@@ -3,6 +3,8 @@ package de.fraunhofer.isst.ids.framework.communication.broker;
 import java.io.IOException;
 import java.net.URI;
 
+import javax.xml.datatype.XMLGregorianCalendar;
+
 import de.fraunhofer.iais.eis.ConnectorUnavailableMessage;
 import de.fraunhofer.iais.eis.ConnectorUnavailableMessageBuilder;
 import de.fraunhofer.iais.eis.ConnectorUpdateMessage;
@@ -24,6 +26,7 @@ import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
 import lombok.experimental.UtilityClass;
 import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
 
 /**
  * The MessageUtils class contains utility methods for building Infomodel Messages (used by the {@link IDSBrokerServiceImpl} class).
@@ -48,10 +51,30 @@ public class BrokerIDSMessageUtils {
                                                          final String infoModelVersion,
                                                          final URI connectorID,
                                                          final Resource resource) throws IOException {
+        return buildResourceUnavailableMessage(securityToken, infoModelVersion, connectorID, resource.getId(),
+                                               IDSUtils.getGregorianNow());
+    }
+
+    /**
+     * Create a ResourceUnavailableMessage used for unregistering the resource with the given ID at a broker.
+     *
+     * @param securityToken the DAT Token used for this request
+     * @param infoModelVersion the Infomodel Version of the connector
+     * @param connectorID the ID of the connector
+     * @param resourceID the ID of the resource that is marked as unavailable at the broker
+     * @param issued the issue date of the message
+     * @return the {@link ResourceUnavailableMessage} as JSONLD
+     * @throws IOException when the message cannot be serialized properly
+     */
+    public static String buildResourceUnavailableMessage(final DynamicAttributeToken securityToken,
+                                                         final String infoModelVersion,
+                                                         final URI connectorID,
+                                                         final URI resourceID,
+                                                         final XMLGregorianCalendar issued) throws IOException {
         final var msg = new ResourceUnavailableMessageBuilder()
-                ._affectedResource_(resource.getId())
+                ._affectedResource_(resourceID)
                 ._securityToken_(securityToken)
-                ._issued_(IDSUtils.getGregorianNow())
+                ._issued_(issued)
                 ._senderAgent_(connectorID)
                 ._issuerConnector_(connectorID)
                 ._modelVersion_(infoModelVersion)
@@ -73,10 +96,30 @@ public class BrokerIDSMessageUtils {
                                                     final String infoModelVersion,
                                                     final URI connectorID,
                                                     final Resource resource) throws IOException {
+        return buildResourceUpdateMessage(securityToken, infoModelVersion, connectorID, resource.getId(),
+                                          IDSUtils.getGregorianNow());
+    }
+
+    /**
+     * Create a ResourceUpdateMessage used for registering and updating the resource with the given ID at a broker.
+     *
+     * @param securityToken the DAT Token used for this request
+     * @param infoModelVersion the Infomodel Version of the connector
+     * @param connectorID the ID of the connector
+     * @param resourceID the ID of the resource that is updated at the broker
+     * @param issued the issue date of the message
+     * @return the {@link ResourceUpdateMessage} as JSONLD
+     * @throws IOException when the message cannot be serialized properly
+     */
+    public static String buildResourceUpdateMessage(final DynamicAttributeToken securityToken,
+                                                    final String infoModelVersion,
+                                                    final URI connectorID,
+                                                    final URI resourceID,
+                                                    final XMLGregorianCalendar issued) throws IOException {
         final var msg = new ResourceUpdateMessageBuilder()
-                ._affectedResource_(resource.getId())
+                ._affectedResource_(resourceID)
                 ._securityToken_(securityToken)
-                ._issued_(IDSUtils.getGregorianNow())
+                ._issued_(issued)
                 ._senderAgent_(connectorID)
                 ._issuerConnector_(connectorID)
                 ._modelVersion_(infoModelVersion)
@@ -181,4 +224,24 @@ public class BrokerIDSMessageUtils {
         return builder.build();
     }
 
+    /**
+     * Generates a two part multipart message with an already serialized (UTF-8) payload,
+     * see {@link #buildRequestBody(String, String)}.
+     *
+     * @param header  String representation of the header message
+     * @param payload UTF-8 bytes of the payload
+     * @return Two part multipart message containing the message header and the payload as body
+     */
+    public static MultipartBody buildRequestBody(final String header, final byte[] payload) {
+        final var builder = new MultipartBody.Builder();
+        builder.setType(MultipartBody.FORM);
+        builder.addFormDataPart("header", header);
+
+        if (payload != null) {
+            builder.addFormDataPart("payload", null, RequestBody.create(payload, null));
+        }
+
+        return builder.build();
+    }
+
 }
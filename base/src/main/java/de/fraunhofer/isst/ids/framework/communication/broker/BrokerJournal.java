@@ -0,0 +1,164 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Append-only journal of the {@link BrokerOutboundQueue}, one JSON entry per line. A "put" entry adds (or replaces)
+ * a queued message, a "done" entry removes it. The journal is compacted to the live messages on replay and when
+ * the number of entries grows too large.
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class BrokerJournal implements Closeable {
+
+    static final String FILE_NAME = "broker-outbound.journal";
+    static final String OP = "op";
+    static final String PUT = "put";
+    static final String DONE = "done";
+
+    final Path file;
+    final boolean sync;
+    FileChannel channel;
+    int entries;
+
+    /**
+     * Create a BrokerJournal in the given directory.
+     *
+     * @param directory the directory of the journal file, created if missing
+     * @param sync true to force every entry to disk before returning
+     * @throws IOException if the directory cannot be created
+     */
+    BrokerJournal(final Path directory, final boolean sync) throws IOException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve(FILE_NAME);
+        this.sync = sync;
+    }
+
+    /**
+     * Read the journal and compact it to the live messages. Unreadable entries (e.g. a partially written last
+     * line after a crash) are skipped.
+     *
+     * @return the live messages by key, in queue order
+     * @throws IOException if the journal cannot be read or rewritten
+     */
+    synchronized LinkedHashMap<String, QueuedBrokerMessage> replay() throws IOException {
+        final var messages = new LinkedHashMap<String, QueuedBrokerMessage>();
+        if (Files.exists(file)) {
+            try (var lines = Files.lines(file, StandardCharsets.UTF_8)) {
+                lines.filter(line -> !line.isBlank()).forEach(line -> {
+                    try {
+                        final var json = new JSONObject(line);
+                        if (PUT.equals(json.getString(OP))) {
+                            final var message = QueuedBrokerMessage.fromJson(json);
+                            messages.remove(message.getKey());
+                            messages.put(message.getKey(), message);
+                        } else {
+                            messages.remove(json.getString("key"));
+                        }
+                    } catch (JSONException | IllegalArgumentException e) {
+                        if (log.isWarnEnabled()) {
+                            log.warn(String.format("Skipping unreadable broker journal entry: %s", e.getMessage()));
+                        }
+                    }
+                });
+            }
+        }
+        compact(messages.values());
+        return messages;
+    }
+
+    /**
+     * Append a message.
+     *
+     * @param message the queued message
+     * @throws IOException if the entry cannot be written
+     */
+    synchronized void put(final QueuedBrokerMessage message) throws IOException {
+        append(message.toJson().put(OP, PUT));
+    }
+
+    /**
+     * Append the removal of a message.
+     *
+     * @param key the key of the message
+     * @throws IOException if the entry cannot be written
+     */
+    synchronized void done(final String key) throws IOException {
+        append(new JSONObject().put(OP, DONE).put("key", key));
+    }
+
+    /**
+     * @return number of entries in the journal file
+     */
+    synchronized int getEntries() {
+        return entries;
+    }
+
+    /**
+     * Replace the journal with one entry per live message.
+     *
+     * @param messages the live messages
+     * @throws IOException if the journal cannot be rewritten
+     */
+    synchronized void compact(final Collection<QueuedBrokerMessage> messages) throws IOException {
+        final var tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (var out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (final var message : messages) {
+                write(out, message.toJson().put(OP, PUT));
+            }
+            out.force(true);
+        }
+        close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        entries = messages.size();
+    }
+
+    /**
+     * Close the journal file, it is reopened by the next write.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void append(final JSONObject entry) throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                       StandardOpenOption.APPEND);
+        }
+        write(channel, entry);
+        if (sync) {
+            channel.force(false);
+        }
+        entries++;
+    }
+
+    private static void write(final FileChannel out, final JSONObject entry) throws IOException {
+        final var buffer = ByteBuffer.wrap((entry.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
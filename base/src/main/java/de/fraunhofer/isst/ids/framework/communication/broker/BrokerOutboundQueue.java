@@ -0,0 +1,414 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import de.fraunhofer.iais.eis.DynamicAttributeToken;
+import de.fraunhofer.iais.eis.Resource;
+import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import de.fraunhofer.isst.ids.framework.daps.DapsTokenProvider;
+import de.fraunhofer.isst.ids.framework.daps.TokenManagerService;
+import de.fraunhofer.isst.ids.framework.util.ClientProvider;
+import de.fraunhofer.isst.ids.framework.util.IDSUtils;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Durable outbound queue for broker messages, enabled by setting broker.queue.directory.
+ *
+ * Queued messages are written to an append-only {@link BrokerJournal} and replayed on startup, a newer message for
+ * the same broker and resource replaces a queued one. Messages are sent in background, in queue order per broker.
+ * If a broker cannot be reached (or answers with a server error, 401, 403, 408 or 429), sending to this broker is
+ * retried with exponential backoff. Messages rejected by the broker with other client errors (or addressed to an
+ * invalid broker URI) are not retried.
+ * While no valid DAT can be acquired, no messages are sent.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "broker.queue", name = "directory")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class BrokerOutboundQueue {
+
+    static final Serializer SERIALIZER = new Serializer();
+
+    final ConfigurationContainer container;
+    final ClientProvider clientProvider;
+    final DapsTokenProvider tokenProvider;
+
+    final Object lock = new Object();
+    final Map<String, QueuedBrokerMessage> messages = new LinkedHashMap<>();
+    final Map<String, Backoff> backoffs = new HashMap<>();
+
+    BrokerJournal journal;
+    ScheduledExecutorService scheduler;
+
+    @Value("${broker.queue.directory}")
+    String directory;
+
+    @Value("${broker.queue.sync:true}")
+    boolean sync;
+
+    @Value("${broker.queue.poll.millis:1000}")
+    long pollMillis;
+
+    @Value("${broker.queue.backoff.initial.millis:1000}")
+    long initialBackoffMillis;
+
+    @Value("${broker.queue.backoff.max.millis:300000}")
+    long maxBackoffMillis;
+
+    @Value("${broker.queue.compaction.threshold:1000}")
+    int compactionThreshold;
+
+    /**
+     * Create a BrokerOutboundQueue.
+     *
+     * @param container the {@link ConfigurationContainer} managing the connector configuration
+     * @param clientProvider the {@link ClientProvider} providing HttpClients using the current connector configuration
+     * @param tokenProvider the {@link DapsTokenProvider} providing the DAT for the messages
+     */
+    @Autowired
+    public BrokerOutboundQueue(final ConfigurationContainer container,
+                               final ClientProvider clientProvider,
+                               final DapsTokenProvider tokenProvider) {
+        this.container = container;
+        this.clientProvider = clientProvider;
+        this.tokenProvider = tokenProvider;
+    }
+
+    /**
+     * Create a BrokerOutboundQueue sending on the given scheduler, the remaining settings use their defaults.
+     *
+     * @param container the {@link ConfigurationContainer} managing the connector configuration
+     * @param clientProvider the {@link ClientProvider} providing HttpClients using the current connector configuration
+     * @param tokenProvider the {@link DapsTokenProvider} providing the DAT for the messages
+     * @param directory directory of the journal
+     * @param scheduler the scheduler running {@link #dispatch()}
+     * @param initialBackoffMillis delay after the first failed message to a broker
+     */
+    BrokerOutboundQueue(final ConfigurationContainer container,
+                        final ClientProvider clientProvider,
+                        final DapsTokenProvider tokenProvider,
+                        final String directory,
+                        final ScheduledExecutorService scheduler,
+                        final long initialBackoffMillis) {
+        this(container, clientProvider, tokenProvider);
+        this.directory = directory;
+        this.scheduler = scheduler;
+        this.sync = true;
+        this.pollMillis = 1000;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = 300000;
+        this.compactionThreshold = 1000;
+    }
+
+    /**
+     * Replay the journal and start sending in background.
+     *
+     * @throws IOException if the journal cannot be read
+     */
+    @PostConstruct
+    public void init() throws IOException {
+        this.journal = new BrokerJournal(Path.of(directory), sync);
+        final var replayed = journal.replay();
+        synchronized (lock) {
+            messages.putAll(replayed);
+        }
+        if (log.isInfoEnabled() && !replayed.isEmpty()) {
+            log.info(String.format("Replayed %d queued broker messages", replayed.size()));
+        }
+        if (scheduler == null) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final var thread = new Thread(runnable, "broker-queue");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        scheduler.scheduleWithFixedDelay(this::dispatch, 0, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop sending, queued messages stay in the journal.
+     *
+     * @throws IOException if the journal cannot be closed
+     */
+    @PreDestroy
+    public void shutdown() throws IOException {
+        scheduler.shutdownNow();
+        journal.close();
+    }
+
+    /**
+     * Queue a {@link de.fraunhofer.iais.eis.ConnectorUpdateMessage}, the self-description is read when it is sent.
+     *
+     * @param brokerURI URI of the broker
+     * @throws IOException if the message cannot be written to the journal
+     */
+    public void queueSelfDescriptionUpdate(final String brokerURI) throws IOException {
+        enqueue(new QueuedBrokerMessage(brokerURI, QueuedBrokerMessage.Type.CONNECTOR_UPDATE, null, null));
+    }
+
+    /**
+     * Queue a {@link de.fraunhofer.iais.eis.ConnectorUnavailableMessage}.
+     *
+     * @param brokerURI URI of the broker
+     * @throws IOException if the message cannot be written to the journal
+     */
+    public void queueUnregister(final String brokerURI) throws IOException {
+        enqueue(new QueuedBrokerMessage(brokerURI, QueuedBrokerMessage.Type.CONNECTOR_UNAVAILABLE, null, null));
+    }
+
+    /**
+     * Queue a {@link de.fraunhofer.iais.eis.ResourceUpdateMessage}, replacing queued messages for the resource.
+     *
+     * @param brokerURI URI of the broker
+     * @param resource the resource that will be updated at the broker
+     * @throws IOException if the resource cannot be serialized or the message cannot be written to the journal
+     */
+    public void queueResourceUpdate(final String brokerURI, final Resource resource) throws IOException {
+        enqueue(new QueuedBrokerMessage(brokerURI, QueuedBrokerMessage.Type.RESOURCE_UPDATE, resource.getId(),
+                                        SERIALIZER.serialize(resource)));
+    }
+
+    /**
+     * Queue a {@link de.fraunhofer.iais.eis.ResourceUnavailableMessage}, replacing queued messages for the resource.
+     *
+     * @param brokerURI URI of the broker
+     * @param resourceID ID of the resource that will be unregistered at the broker
+     * @throws IOException if the message cannot be written to the journal
+     */
+    public void queueResourceRemoval(final String brokerURI, final URI resourceID) throws IOException {
+        enqueue(new QueuedBrokerMessage(brokerURI, QueuedBrokerMessage.Type.RESOURCE_UNAVAILABLE, resourceID, null));
+    }
+
+    /**
+     * @return number of messages waiting to be sent
+     */
+    public int size() {
+        synchronized (lock) {
+            return messages.size();
+        }
+    }
+
+    private void enqueue(final QueuedBrokerMessage message) throws IOException {
+        synchronized (lock) {
+            journal.put(message);
+            messages.remove(message.getKey());
+            messages.put(message.getKey(), message);
+        }
+        scheduler.execute(this::dispatch);
+    }
+
+    /**
+     * Send the queued messages of all brokers which are not backing off. Runs on the scheduler thread only.
+     */
+    void dispatch() {
+        try {
+            final var now = System.currentTimeMillis();
+            final ArrayList<QueuedBrokerMessage> pending;
+            synchronized (lock) {
+                pending = new ArrayList<>(messages.values());
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            DynamicAttributeToken securityToken = null;
+            for (final var message : pending) {
+                final var backoff = backoffs.get(message.getBrokerURI());
+                if (backoff != null && backoff.nextAttempt > now) {
+                    continue;
+                }
+                if (securityToken == null) {
+                    securityToken = tokenProvider.getDAT();
+                    if (TokenManagerService.INVALID_TOKEN.equals(securityToken.getTokenValue())) {
+                        //the broker would reject the messages, keep them until a DAT can be acquired
+                        if (log.isWarnEnabled()) {
+                            log.warn("No valid DAT available, postponing queued broker messages");
+                        }
+                        return;
+                    }
+                }
+                send(message, securityToken);
+            }
+            compactIfNeeded();
+        } catch (IOException e) {
+            if (log.isErrorEnabled()) {
+                log.error(String.format("Broker journal could not be written: %s", e.getMessage()), e);
+            }
+        } catch (RuntimeException e) {
+            if (log.isErrorEnabled()) {
+                log.error(String.format("Sending queued broker messages failed: %s", e.getMessage()), e);
+            }
+        }
+    }
+
+    /**
+     * Send a single message and update queue and backoff of its broker.
+     *
+     * @param message the message
+     * @param securityToken the DAT for the message
+     * @throws IOException if the journal cannot be written
+     */
+    private void send(final QueuedBrokerMessage message, final DynamicAttributeToken securityToken) throws IOException {
+        final var brokerURI = message.getBrokerURI();
+        final var url = HttpUrl.parse(brokerURI);
+        if (url == null) {
+            //can never be sent, retrying would block the queue of this broker forever
+            if (log.isErrorEnabled()) {
+                log.error(String.format("Queued %s message has an invalid broker URI %s, dropping it",
+                                        message.getType(), brokerURI));
+            }
+            remove(message);
+            return;
+        }
+
+        final Request request;
+        try {
+            request = new Request.Builder().url(url).post(buildBody(message, securityToken)).build();
+        } catch (IOException | RuntimeException e) {
+            //e.g. the connector configuration is currently unavailable
+            failed(brokerURI, String.format("message could not be built: %s", e.getMessage()));
+            return;
+        }
+
+        try (var response = clientProvider.getClient().newCall(request).execute()) {
+            if (isRetryable(response.code())) {
+                failed(brokerURI, String.format("status %d", response.code()));
+                return;
+            }
+            if (!response.isSuccessful() && log.isWarnEnabled()) {
+                log.warn(String.format("Broker %s rejected queued %s message with status %d, dropping it",
+                                       brokerURI, message.getType(), response.code()));
+            }
+        } catch (IOException | RuntimeException e) {
+            failed(brokerURI, e.getMessage());
+            return;
+        }
+
+        backoffs.remove(brokerURI);
+        remove(message);
+    }
+
+    /**
+     * Remove a message from the queue and the journal.
+     *
+     * @param message the message
+     * @throws IOException if the journal cannot be written
+     */
+    private void remove(final QueuedBrokerMessage message) throws IOException {
+        synchronized (lock) {
+            //only remove the message if it was not replaced in the meantime
+            if (messages.get(message.getKey()) == message) {
+                messages.remove(message.getKey());
+                journal.done(message.getKey());
+            }
+        }
+    }
+
+    /**
+     * Server errors, rejected or expired DATs (e.g. during a DAPS outage), timeouts and rate limiting are temporary,
+     * other client errors are not.
+     *
+     * @param code http status code of the broker response
+     * @return true if the message should be retried
+     */
+    static boolean isRetryable(final int code) {
+        return code >= 500 || code == 401 || code == 403 || code == 408 || code == 429;
+    }
+
+    /**
+     * Back off from a broker after a failed message.
+     *
+     * @param brokerURI URI of the broker
+     * @param reason reason of the failure
+     */
+    private void failed(final String brokerURI, final String reason) {
+        final var backoff = backoffs.computeIfAbsent(brokerURI, uri -> new Backoff());
+        backoff.failures++;
+        final var delay = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(backoff.failures - 1, 30));
+        backoff.nextAttempt = System.currentTimeMillis() + delay;
+        if (log.isWarnEnabled()) {
+            log.warn(String.format("Sending queued message to broker %s failed (%s), retrying in %d ms",
+                                   brokerURI, reason, delay));
+        }
+    }
+
+    /**
+     * Build the message with a current header and DAT.
+     *
+     * @param message the queued message
+     * @param securityToken the DAT
+     * @return the multipart body
+     * @throws IOException if the message cannot be serialized
+     */
+    private RequestBody buildBody(final QueuedBrokerMessage message, final DynamicAttributeToken securityToken) throws IOException {
+        final var version = IDSBrokerServiceImpl.INFO_MODEL_VERSION;
+        final var connectorID = container.getConnector().getId();
+        switch (message.getType()) {
+            case CONNECTOR_UPDATE:
+                return BrokerIDSMessageUtils.buildRequestBody(
+                        BrokerIDSMessageUtils.buildUpdateMessage(securityToken, version, connectorID),
+                        container.getSelfDescriptionBytes());
+            case CONNECTOR_UNAVAILABLE:
+                return BrokerIDSMessageUtils.buildRequestBody(
+                        BrokerIDSMessageUtils.buildUnavailableMessage(securityToken, version, connectorID),
+                        container.getSelfDescriptionBytes());
+            case RESOURCE_UPDATE:
+                return BrokerIDSMessageUtils.buildRequestBody(
+                        BrokerIDSMessageUtils.buildResourceUpdateMessage(securityToken, version, connectorID,
+                                                                         message.getResourceID(), IDSUtils.getGregorianNow()),
+                        message.getPayload());
+            case RESOURCE_UNAVAILABLE:
+                return BrokerIDSMessageUtils.buildRequestBody(
+                        BrokerIDSMessageUtils.buildResourceUnavailableMessage(securityToken, version, connectorID,
+                                                                              message.getResourceID(), IDSUtils.getGregorianNow()),
+                        (String) null);
+            default:
+                throw new IllegalStateException("Unknown message type " + message.getType());
+        }
+    }
+
+    /**
+     * Rewrite the journal when it contains many more entries than live messages.
+     *
+     * @throws IOException if the journal cannot be rewritten
+     */
+    private void compactIfNeeded() throws IOException {
+        synchronized (lock) {
+            final var entries = journal.getEntries();
+            if (entries > compactionThreshold && entries > 2 * messages.size()) {
+                journal.compact(messages.values());
+            }
+        }
+    }
+
+    /**
+     * Retry state of a broker, only used by the scheduler thread.
+     */
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static class Backoff {
+        int failures;
+        long nextAttempt;
+    }
+}
@@ -0,0 +1,324 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.fraunhofer.iais.eis.QueryLanguage;
+import de.fraunhofer.iais.eis.QueryScope;
+import de.fraunhofer.iais.eis.QueryTarget;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Cache for the results of broker queries, keyed by broker URI, query, {@link QueryLanguage}, {@link QueryScope}
+ * and {@link QueryTarget}. Cached results are returned as responses with buffered body, without contacting the broker.
+ *
+ * An entry is fresh for the TTL. During the following stale window the stale entry is still returned, while it is
+ * refreshed in background. Only successful responses are cached, the cache is bounded by the total size of the
+ * cached bodies and evicts the least recently used entries.
+ */
+@Slf4j
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class BrokerQueryCache {
+
+    /**
+     * Sends a query to the broker.
+     */
+    @FunctionalInterface
+    public interface QueryLoader {
+        /**
+         * @return the response of the broker
+         * @throws IOException if the query cannot be sent
+         */
+        Response load() throws IOException;
+    }
+
+    Map<QueryKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    Map<String, Long> generations = new HashMap<>();
+    AtomicLong allGeneration = new AtomicLong();
+    long ttlNanos;
+    long staleNanos;
+    long maxBytes;
+    ExecutorService refresher;
+
+    AtomicLong hits = new AtomicLong();
+    AtomicLong misses = new AtomicLong();
+    AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Create a BrokerQueryCache.
+     *
+     * @param ttl time a result is fresh, zero disables the cache
+     * @param staleWhileRevalidate time after the TTL in which a stale result is returned and refreshed in background
+     * @param maxBytes maximum total size of the cached bodies
+     */
+    public BrokerQueryCache(final Duration ttl, final Duration staleWhileRevalidate, final long maxBytes) {
+        this(ttl, staleWhileRevalidate, maxBytes, Executors.newSingleThreadExecutor(runnable -> {
+            final var thread = new Thread(runnable, "broker-query-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * Create a BrokerQueryCache.
+     *
+     * @param ttl time a result is fresh, zero disables the cache
+     * @param staleWhileRevalidate time after the TTL in which a stale result is returned and refreshed in background
+     * @param maxBytes maximum total size of the cached bodies
+     * @param refresher executor for background refreshes
+     */
+    BrokerQueryCache(final Duration ttl, final Duration staleWhileRevalidate, final long maxBytes,
+                     final ExecutorService refresher) {
+        this.ttlNanos = ttl.toNanos();
+        this.staleNanos = staleWhileRevalidate.toNanos();
+        this.maxBytes = maxBytes;
+        this.refresher = refresher;
+    }
+
+    /**
+     * Get the result of a query, from the cache if possible, else by loading it.
+     *
+     * @param brokerURI URI of the broker
+     * @param query the query
+     * @param queryLanguage the language of the query
+     * @param queryScope the scope of the query
+     * @param queryTarget the target of the query
+     * @param loader sends the query to the broker on a cache miss or refresh
+     * @return the response (with buffered body if it was cached)
+     * @throws IOException if the query cannot be sent
+     */
+    public Response get(final String brokerURI,
+                        final String query,
+                        final QueryLanguage queryLanguage,
+                        final QueryScope queryScope,
+                        final QueryTarget queryTarget,
+                        final QueryLoader loader) throws IOException {
+        if (!isEnabled()) {
+            return loader.load();
+        }
+
+        final var key = new QueryKey(brokerURI, query, queryLanguage, queryScope, queryTarget);
+        final Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        final var now = System.nanoTime();
+        if (entry != null && now - entry.loaded < ttlNanos + staleNanos) {
+            hits.incrementAndGet();
+            if (now - entry.loaded >= ttlNanos && entry.refreshing.compareAndSet(false, true)) {
+                refresher.execute(() -> refresh(key, entry, loader));
+            }
+            return entry.toResponse();
+        }
+
+        misses.incrementAndGet();
+        return load(key, loader);
+    }
+
+    /**
+     * Remove the cached results of all queries to a broker, e.g. after the connector updated its
+     * information at this broker.
+     *
+     * @param brokerURI URI of the broker
+     */
+    public void invalidate(final String brokerURI) {
+        synchronized (entries) {
+            //results of queries still running must not be cached anymore
+            generations.merge(brokerURI, 1L, Long::sum);
+            entries.entrySet().removeIf(e -> {
+                if (e.getKey().brokerURI.equals(brokerURI)) {
+                    bytes.addAndGet(-e.getValue().body.length);
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    /**
+     * Remove all cached results.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            allGeneration.incrementAndGet();
+            entries.clear();
+            bytes.set(0);
+        }
+    }
+
+    /**
+     * @return true if results are cached
+     */
+    public boolean isEnabled() {
+        return ttlNanos > 0 && maxBytes > 0;
+    }
+
+    /**
+     * @return number of queries answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of queries sent to a broker
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return total size of the cached bodies
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Stop the background refresh.
+     */
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Load a result and cache it if the response is successful.
+     *
+     * @param key the key of the query
+     * @param loader sends the query
+     * @return the response with buffered body
+     * @throws IOException if the query cannot be sent
+     */
+    private Response load(final QueryKey key, final QueryLoader loader) throws IOException {
+        final var generation = generation(key.brokerURI);
+        try (var response = loader.load()) {
+            final var body = response.body();
+            final var entry = new Entry(response.request(), response.protocol(), response.code(), response.message(),
+                                        response.headers(), body != null ? body.contentType() : null,
+                                        body != null ? body.bytes() : new byte[0], System.nanoTime(),
+                                        new AtomicBoolean(false));
+            if (response.isSuccessful()) {
+                put(key, entry, generation);
+            }
+            return entry.toResponse();
+        }
+    }
+
+    /**
+     * Refresh a stale entry in background, keeping it if the refresh fails.
+     */
+    private void refresh(final QueryKey key, final Entry stale, final QueryLoader loader) {
+        try {
+            load(key, loader);
+        } catch (IOException | RuntimeException e) {
+            if (log.isWarnEnabled()) {
+                log.warn(String.format("Refreshing cached query result of %s failed: %s", key.brokerURI, e.getMessage()));
+            }
+        } finally {
+            stale.refreshing.set(false);
+        }
+    }
+
+    /**
+     * The generation of the cached results of a broker, changed by every invalidation.
+     *
+     * @param brokerURI URI of the broker
+     * @return the current generation
+     */
+    private long generation(final String brokerURI) {
+        synchronized (entries) {
+            //both counters only grow, so the sum changes with every invalidation
+            return generations.getOrDefault(brokerURI, 0L) + allGeneration.get();
+        }
+    }
+
+    /**
+     * Cache a result, unless the broker was invalidated while it was loaded.
+     *
+     * @param key the key of the query
+     * @param entry the result
+     * @param generation the generation of the broker when loading started
+     */
+    private void put(final QueryKey key, final Entry entry, final long generation) {
+        if (entry.body.length > maxBytes) {
+            return;
+        }
+        synchronized (entries) {
+            if (generation != generation(key.brokerURI)) {
+                return;
+            }
+            final var previous = entries.put(key, entry);
+            if (previous != null) {
+                bytes.addAndGet(-previous.body.length);
+            }
+            bytes.addAndGet(entry.body.length);
+            final var iterator = entries.values().iterator();
+            while (bytes.get() > maxBytes && iterator.hasNext()) {
+                final var eldest = iterator.next();
+                if (eldest != entry) {
+                    bytes.addAndGet(-eldest.body.length);
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Key of a cached query.
+     */
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    private static class QueryKey {
+        String brokerURI;
+        String query;
+        QueryLanguage queryLanguage;
+        QueryScope queryScope;
+        QueryTarget queryTarget;
+    }
+
+    /**
+     * A buffered response.
+     */
+    @AllArgsConstructor
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    private static class Entry {
+        Request request;
+        Protocol protocol;
+        int code;
+        String message;
+        Headers headers;
+        MediaType contentType;
+        byte[] body;
+        long loaded;
+        AtomicBoolean refreshing;
+
+        Response toResponse() {
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(protocol)
+                    .code(code)
+                    .message(message)
+                    .headers(headers)
+                    .body(ResponseBody.create(body, contentType))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import de.fraunhofer.iais.eis.Message;
+import de.fraunhofer.isst.ids.framework.communication.http.IDSMultipartResponse;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import okhttp3.Response;
+import org.apache.commons.fileupload.FileUploadException;
+
+/**
+ * The result of a broker query, read line by line from the payload of the multipart response while iterating.
+ * Only the current line is held in memory, so results of any size can be processed. Rows are read when the caller
+ * asks for them, the broker connection is held open until the stream is closed.
+ *
+ * SELECT queries are answered with tab separated values (the first line contains the variables), CONSTRUCT and
+ * DESCRIBE queries with N-Triples (one triple per line). Use {@link #readVariables()} and {@link #nextBinding()}
+ * for the former and the line iterator for the latter.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class BrokerQueryStream implements Closeable, Iterator<String> {
+
+    final IDSMultipartResponse response;
+    final BufferedReader reader;
+    List<String> variables;
+    String nextLine;
+
+    /**
+     * Create a BrokerQueryStream.
+     *
+     * @param response the parsed multipart response of the broker
+     */
+    BrokerQueryStream(final IDSMultipartResponse response) {
+        this.response = response;
+        this.reader = response.getPayload() != null
+                ? new BufferedReader(new InputStreamReader(response.getPayload(), response.getPayloadCharset()))
+                : null;
+    }
+
+    /**
+     * Read the header of a broker response, the payload is left unread.
+     *
+     * @param response the response of the broker
+     * @return the BrokerQueryStream over the payload
+     * @throws IOException if the response is not a valid multipart response (the response is closed then)
+     */
+    static BrokerQueryStream of(final Response response) throws IOException {
+        try {
+            return new BrokerQueryStream(IDSMultipartResponse.parse(response));
+        } catch (FileUploadException | IOException e) {
+            response.close();
+            throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Getter for the header of the response, e.g. to detect a RejectionMessage of the broker.
+     *
+     * @return the header as IDS {@link Message}
+     * @throws IOException if the header cannot be deserialized
+     */
+    public Message getHeader() throws IOException {
+        return response.getHeader();
+    }
+
+    /**
+     * Getter for the http status code of the response.
+     *
+     * @return the status code
+     */
+    public int getCode() {
+        return response.getCode();
+    }
+
+    /**
+     * Read the variables of a tab separated SELECT result. Must be called before the first row is read.
+     *
+     * @return the variable names without leading '?', empty if the result has no lines
+     * @throws IOException if the payload cannot be read
+     */
+    public List<String> readVariables() throws IOException {
+        if (variables == null) {
+            variables = new ArrayList<>();
+            final var line = readLine();
+            if (line != null) {
+                for (final var variable : line.split("\t", -1)) {
+                    variables.add(variable.startsWith("?") ? variable.substring(1) : variable);
+                }
+            }
+        }
+        return variables;
+    }
+
+    /**
+     * Read the next row of a tab separated SELECT result.
+     *
+     * @return the values by variable name (missing values are absent), null if there are no more rows
+     * @throws IOException if the payload cannot be read
+     */
+    public Map<String, String> nextBinding() throws IOException {
+        final var vars = readVariables();
+        final var line = readLine();
+        if (line == null) {
+            return null;
+        }
+        final var values = line.split("\t", -1);
+        final var binding = new LinkedHashMap<String, String>();
+        for (var i = 0; i < Math.min(vars.size(), values.length); i++) {
+            if (!values[i].isEmpty()) {
+                binding.put(vars.get(i), values[i]);
+            }
+        }
+        return binding;
+    }
+
+    /**
+     * @return true if the payload has another line
+     * @throws UncheckedIOException if the payload cannot be read
+     */
+    @Override
+    public boolean hasNext() {
+        if (nextLine == null && reader != null) {
+            try {
+                nextLine = reader.readLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return nextLine != null;
+    }
+
+    /**
+     * @return the next line of the payload
+     * @throws NoSuchElementException if there are no more lines
+     * @throws UncheckedIOException if the payload cannot be read
+     */
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        final var line = nextLine;
+        nextLine = null;
+        return line;
+    }
+
+    /**
+     * The remaining lines of the payload as sequential stream, closing the stream closes the response.
+     *
+     * @return stream of lines
+     */
+    public Stream<String> lines() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * Close the response, unread lines are discarded.
+     */
+    @Override
+    public void close() {
+        response.close();
+    }
+
+    private String readLine() throws IOException {
+        try {
+            return hasNext() ? next() : null;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import de.fraunhofer.iais.eis.Resource;
+import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import de.fraunhofer.isst.ids.framework.daps.DapsTokenProvider;
+import de.fraunhofer.isst.ids.framework.util.ClientProvider;
+import de.fraunhofer.isst.ids.framework.util.IDSUtils;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Request;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Publishes resource updates and removals to brokers in batches.
+ *
+ * Changes are collected per broker for a time window (or until the batch size of a broker is reached), repeated
+ * changes of the same resource are collapsed to the latest one. A batch is sent with a bounded number of
+ * parallel requests, all messages of a batch share one DAT, issue date and connector ID.
+ */
+@Slf4j
+@Service
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class BrokerResourcePublisher {
+
+    static final Serializer SERIALIZER = new Serializer();
+
+    final ConfigurationContainer container;
+    final ClientProvider clientProvider;
+    final DapsTokenProvider tokenProvider;
+
+    final Object lock = new Object();
+    final Map<String, Map<URI, PendingChange>> pending = new LinkedHashMap<>();
+    ScheduledFuture<?> scheduledFlush;
+    boolean flushRequested;
+    boolean shutdown;
+
+    ScheduledExecutorService scheduler;
+
+    @Value("${broker.publish.window.millis:500}")
+    long windowMillis;
+
+    @Value("${broker.publish.batch.size:200}")
+    int maxBatchSize;
+
+    @Value("${broker.publish.concurrency:8}")
+    int maxConcurrency;
+
+    @Value("${broker.publish.deadline.seconds:30}")
+    long deadlineSeconds;
+
+    /**
+     * Create a BrokerResourcePublisher.
+     *
+     * @param container the {@link ConfigurationContainer} managing the connector configuration
+     * @param clientProvider the {@link ClientProvider} providing HttpClients using the current connector configuration
+     * @param tokenProvider the {@link DapsTokenProvider} providing the DAT for the messages
+     */
+    @Autowired
+    public BrokerResourcePublisher(final ConfigurationContainer container,
+                                   final ClientProvider clientProvider,
+                                   final DapsTokenProvider tokenProvider) {
+        this.container = container;
+        this.clientProvider = clientProvider;
+        this.tokenProvider = tokenProvider;
+    }
+
+    /**
+     * Create the scheduler sending the batches.
+     */
+    @PostConstruct
+    public void init() {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "broker-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Send the pending changes and stop the scheduler, changes queued afterwards are rejected.
+     */
+    @PreDestroy
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+        }
+        try {
+            CompletableFuture.runAsync(this::sendPending, scheduler).get(deadlineSeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            if (log.isWarnEnabled()) {
+                log.warn(String.format("Pending broker updates could not be sent: %s", e.getMessage()));
+            }
+        }
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Queue a {@link de.fraunhofer.iais.eis.ResourceUpdateMessage} for the given resource.
+     *
+     * @param brokerURI URI of the broker the resource is updated at
+     * @param resource the resource that will be updated at the broker
+     * @return future completed with the result of the (possibly collapsed) message
+     * @throws IllegalStateException if the publisher is shut down
+     */
+    public CompletableFuture<BrokerResult> updateResource(final String brokerURI, final Resource resource) {
+        return enqueue(brokerURI, resource.getId(), resource);
+    }
+
+    /**
+     * Queue a {@link de.fraunhofer.iais.eis.ResourceUnavailableMessage} for the given resource.
+     *
+     * @param brokerURI URI of the broker the resource is unregistered at
+     * @param resource the resource that will be unregistered at the broker
+     * @return future completed with the result of the (possibly collapsed) message
+     * @throws IllegalStateException if the publisher is shut down
+     */
+    public CompletableFuture<BrokerResult> removeResource(final String brokerURI, final Resource resource) {
+        return removeResource(brokerURI, resource.getId());
+    }
+
+    /**
+     * Queue a {@link de.fraunhofer.iais.eis.ResourceUnavailableMessage} for the resource with the given ID.
+     *
+     * @param brokerURI URI of the broker the resource is unregistered at
+     * @param resourceID ID of the resource that will be unregistered at the broker
+     * @return future completed with the result of the (possibly collapsed) message
+     * @throws IllegalStateException if the publisher is shut down
+     */
+    public CompletableFuture<BrokerResult> removeResource(final String brokerURI, final URI resourceID) {
+        return enqueue(brokerURI, resourceID, null);
+    }
+
+    /**
+     * Send all pending changes without waiting for the end of the window.
+     *
+     * @return future completed when all changes pending at the time of the call are sent
+     * (immediately after shutdown, when all changes were already sent)
+     */
+    public CompletableFuture<Void> flush() {
+        synchronized (lock) {
+            if (shutdown) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return CompletableFuture.runAsync(this::sendPending, scheduler);
+        }
+    }
+
+    /**
+     * @return number of changes waiting to be sent
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.values().stream().mapToInt(Map::size).sum();
+        }
+    }
+
+    /**
+     * Add a change to the pending batch of the broker, replacing a pending change of the same resource.
+     *
+     * @param brokerURI URI of the broker
+     * @param resourceID ID of the changed resource
+     * @param resource the updated resource, null for a removal
+     * @return future completed with the result of the message
+     * @throws IllegalStateException if the publisher is shut down
+     */
+    private CompletableFuture<BrokerResult> enqueue(final String brokerURI, final URI resourceID, final Resource resource) {
+        final var future = new CompletableFuture<BrokerResult>();
+        final var change = new PendingChange(brokerURI, resourceID, resource);
+        change.waiters.add(future);
+
+        synchronized (lock) {
+            //checked under the lock, so no change is added after the final flush of shutdown took the pending ones
+            if (shutdown) {
+                throw new IllegalStateException(String.format("Publisher is shut down, change of %s at %s rejected",
+                                                              resourceID, brokerURI));
+            }
+            final var changes = pending.computeIfAbsent(brokerURI, uri -> new LinkedHashMap<>());
+            final var previous = changes.put(resourceID, change);
+            if (previous != null) {
+                //the previous change is obsolete, its callers get the result of the latest one
+                change.waiters.addAll(previous.waiters);
+            }
+
+            if (changes.size() >= maxBatchSize) {
+                if (!flushRequested) {
+                    flushRequested = true;
+                    scheduler.execute(this::sendPending);
+                }
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::sendPending, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Take all pending changes and send them, blocks until all responses are received.
+     * Only called from the scheduler thread, so batches are sent one after another.
+     */
+    private void sendPending() {
+        final var batch = new ArrayList<PendingChange>();
+        synchronized (lock) {
+            pending.values().forEach(changes -> batch.addAll(changes.values()));
+            pending.clear();
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            flushRequested = false;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Sending batch of %d resource changes to brokers", batch.size()));
+        }
+
+        try {
+            final var securityToken = tokenProvider.getDAT();
+            final var issued = IDSUtils.getGregorianNow();
+            final var connectorID = container.getConnector().getId();
+
+            final var requests = new LinkedHashMap<PendingChange, Request>();
+            for (final var change : batch) {
+                try {
+                    final String header;
+                    String payload = null;
+                    if (change.resource != null) {
+                        header = BrokerIDSMessageUtils.buildResourceUpdateMessage(securityToken,
+                                IDSBrokerServiceImpl.INFO_MODEL_VERSION, connectorID, change.resourceID, issued);
+                        payload = SERIALIZER.serialize(change.resource);
+                    } else {
+                        header = BrokerIDSMessageUtils.buildResourceUnavailableMessage(securityToken,
+                                IDSBrokerServiceImpl.INFO_MODEL_VERSION, connectorID, change.resourceID, issued);
+                    }
+                    final var body = BrokerIDSMessageUtils.buildRequestBody(header, payload);
+                    requests.put(change, new Request.Builder().url(change.brokerURI).post(body).build());
+                } catch (IOException e) {
+                    change.complete(BrokerResult.failed(change.brokerURI, e, Duration.ZERO));
+                }
+            }
+
+            final var fanOut = new BrokerFanOut<PendingChange>(clientProvider.getClient(), maxConcurrency,
+                                                               Duration.ofSeconds(deadlineSeconds));
+            fanOut.send(requests).join().forEach(PendingChange::complete);
+        } catch (RuntimeException e) {
+            if (log.isErrorEnabled()) {
+                log.error(String.format("Batch of resource changes could not be sent: %s", e.getMessage()), e);
+            }
+            batch.forEach(change -> change.complete(BrokerResult.failed(change.brokerURI, e, Duration.ZERO)));
+        }
+    }
+
+    /**
+     * A pending update (resource is set) or removal (resource is null) of a resource at a broker.
+     */
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    private static class PendingChange {
+        String brokerURI;
+        URI resourceID;
+        Resource resource;
+        List<CompletableFuture<BrokerResult>> waiters = new ArrayList<>();
+
+        PendingChange(final String brokerURI, final URI resourceID, final Resource resource) {
+            this.brokerURI = brokerURI;
+            this.resourceID = resourceID;
+            this.resource = resource;
+        }
+
+        void complete(final BrokerResult result) {
+            waiters.forEach(waiter -> waiter.complete(result));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.time.Duration;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import okhttp3.Response;
+
+/**
+ * Outcome of a message sent to a single broker as part of a fan-out to several brokers.
+ * Either the response of the broker (with buffered body, it does not have to be closed) or the error of the request.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class BrokerResult {
+
+    /**
+     * URI of the broker.
+     */
+    String brokerUri;
+
+    /**
+     * Response of the broker with buffered body, null if the request failed.
+     */
+    Response response;
+
+    /**
+     * Body of the response, null if the request failed.
+     */
+    String body;
+
+    /**
+     * Error of the request, null if a response was received.
+     */
+    Throwable error;
+
+    /**
+     * Time between sending the request and receiving the response or error.
+     */
+    Duration duration;
+
+    /**
+     * Create the result for a received response.
+     *
+     * @param brokerUri URI of the broker
+     * @param response the response with buffered body
+     * @param body the body of the response
+     * @param duration duration of the request
+     * @return the BrokerResult
+     */
+    static BrokerResult received(final String brokerUri, final Response response, final String body, final Duration duration) {
+        return new BrokerResult(brokerUri, response, body, null, duration);
+    }
+
+    /**
+     * Create the result for a failed request.
+     *
+     * @param brokerUri URI of the broker
+     * @param error the error of the request (e.g. an InterruptedIOException if the deadline was exceeded)
+     * @param duration duration of the request
+     * @return the BrokerResult
+     */
+    static BrokerResult failed(final String brokerUri, final Throwable error, final Duration duration) {
+        return new BrokerResult(brokerUri, null, null, error, duration);
+    }
+
+    /**
+     * @return true if the broker returned a successful response
+     */
+    public boolean isSuccess() {
+        return response != null && response.isSuccessful();
+    }
+
+    /**
+     * @return http status code of the response, -1 if the request failed
+     */
+    public int getStatusCode() {
+        return response != null ? response.code() : -1;
+    }
+}
@@ -1,7 +1,11 @@
 package de.fraunhofer.isst.ids.framework.communication.broker;
 
 import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import de.fraunhofer.iais.eis.QueryLanguage;
 import de.fraunhofer.iais.eis.QueryScope;
@@ -25,6 +29,17 @@ public interface IDSBrokerService {
      */
     Response removeResourceFromBroker(String brokerURI, Resource resource) throws IOException;
 
+    /**
+     * Builds and sends a {@link de.fraunhofer.iais.eis.ResourceUnavailableMessage} to the broker.
+     * The Resource with the given ID will be unregistered from the broker.
+     *
+     * @param brokerURI URI of the broker the connector will try to unregister the resource at
+     * @param resourceID ID of the resource that will be unregistered at the broker
+     * @return the ResponseMessage of the Broker
+     * @throws IOException if the built message could not be serialized
+     */
+    Response removeResourceFromBroker(String brokerURI, URI resourceID) throws IOException;
+
     /**
      * Builds and sends a {@link de.fraunhofer.iais.eis.ConnectorUpdateMessage} to the broker.
      * The Connector will be registered at the broker, or its selfdescription will be updated.
@@ -57,15 +72,73 @@ public interface IDSBrokerService {
      */
     Response updateSelfDescriptionAtBroker(String brokerURI) throws IOException;
 
+    /**
+     * Sends only the changes of the self-description since the last successful update at the broker.
+     * If the connector-level metadata changed (or nothing was sent to the broker yet), a
+     * {@link de.fraunhofer.iais.eis.ConnectorUpdateMessage} with the full self-description is sent. Otherwise a
+     * {@link de.fraunhofer.iais.eis.ResourceUpdateMessage} is sent for every new or changed resource and a
+     * {@link de.fraunhofer.iais.eis.ResourceUnavailableMessage} for every removed one.
+     * The default implementation does not track changes and always sends the full self-description using
+     * {@link #updateSelfDescriptionAtBroker(String)}, implementations should override it.
+     *
+     * @param brokerURI URI of the broker the connector will try to update its information at
+     * @return the results by ID of the affected resource (or the connector ID for a full update, the broker URI
+     * in the default implementation), empty if nothing changed
+     * @throws IOException if the built messages could not be serialized
+     */
+    default Map<URI, BrokerResult> updateSelfDescriptionDeltaAtBroker(final String brokerURI) throws IOException {
+        final var start = System.nanoTime();
+        try (var response = updateSelfDescriptionAtBroker(brokerURI)) {
+            return Map.of(URI.create(brokerURI),
+                          BrokerFanOut.received(brokerURI, response, Duration.ofNanos(System.nanoTime() - start)));
+        }
+    }
+
     /**
      * Builds and sends a {@link de.fraunhofer.iais.eis.ConnectorUpdateMessage} to a list of brokers.
+     * Blocks until all brokers answered or their requests failed.
      *
      * @param brokerUris URIs of the brokers the connector will try to update its information at
-     * @return a List of Responses from the Broker
+     * @return a List of Responses from the Brokers that answered (with buffered bodies)
      * @throws IOException if the built message could not be serialized
      */
     List<Response> updateSelfDescriptionAtBrokers(List<String> brokerUris) throws IOException;
 
+    /**
+     * Builds a {@link de.fraunhofer.iais.eis.ConnectorUpdateMessage} once and sends it to a list of brokers in
+     * parallel, using the default concurrency limit and deadline.
+     * The default implementation sends the messages using {@link #updateSelfDescriptionAtBrokers(List)} blocking the
+     * calling thread, implementations should override it.
+     *
+     * @param brokerUris URIs of the brokers the connector will try to update its information at
+     * @return future with the {@link BrokerResult} for every broker URI
+     * @throws IOException if the built message could not be serialized
+     */
+    default CompletableFuture<Map<String, BrokerResult>> updateSelfDescriptionAtBrokersAsync(final List<String> brokerUris)
+            throws IOException {
+        return CompletableFuture.completedFuture(BrokerFanOut.results(brokerUris, updateSelfDescriptionAtBrokers(brokerUris)));
+    }
+
+    /**
+     * Builds a {@link de.fraunhofer.iais.eis.ConnectorUpdateMessage} once and sends it to a list of brokers in
+     * parallel. The future completes when every broker answered or its request failed, the outcome of every
+     * broker is captured in its {@link BrokerResult}.
+     * The default implementation sends the messages using {@link #updateSelfDescriptionAtBrokers(List)} blocking the
+     * calling thread and ignores the concurrency limit and deadline, implementations should override it.
+     *
+     * @param brokerUris URIs of the brokers the connector will try to update its information at
+     * @param maxConcurrency maximum number of requests in flight
+     * @param deadline maximum duration of the request to a single broker
+     * @return future with the {@link BrokerResult} for every broker URI, in the order of the given list
+     * @throws IOException if the built message could not be serialized
+     */
+    default CompletableFuture<Map<String, BrokerResult>> updateSelfDescriptionAtBrokersAsync(final List<String> brokerUris,
+                                                                                            final int maxConcurrency,
+                                                                                            final Duration deadline)
+            throws IOException {
+        return updateSelfDescriptionAtBrokersAsync(brokerUris);
+    }
+
     /**
      * Builds and sends a {@link de.fraunhofer.iais.eis.QueryMessage} to the broker.
      *
@@ -78,4 +151,25 @@ public interface IDSBrokerService {
      * @throws IOException if the built message could not be serialized
      */
     Response queryBroker(String brokerURI, String query, QueryLanguage queryLanguage, QueryScope queryScope, QueryTarget queryTarget) throws IOException;
+
+    /**
+     * Builds and sends a {@link de.fraunhofer.iais.eis.QueryMessage} to the broker and returns the result as stream,
+     * which is parsed while it is read. Results are not cached. The returned stream must be closed.
+     * The default implementation wraps the response of {@link #queryBroker}.
+     *
+     * @param brokerURI     the URI of the broker the message is sent to
+     * @param query         the query as payload for the QueryMessage
+     * @param queryLanguage the Language of the Query (e.g. SPARQL, SQL, XQUERY). See {@link QueryLanguage}
+     * @param queryScope the Scope of the Query (ALL connectors, ACTIVE connectors, INACTIVE connectors). See {@link QueryScope}
+     * @param queryTarget the type of IDS Components that are queried. See {@link QueryTarget}
+     * @return the result of the query, read line by line
+     * @throws IOException if the built message could not be serialized or the response is not a multipart response
+     */
+    default BrokerQueryStream queryBrokerStreaming(final String brokerURI,
+                                                   final String query,
+                                                   final QueryLanguage queryLanguage,
+                                                   final QueryScope queryScope,
+                                                   final QueryTarget queryTarget) throws IOException {
+        return BrokerQueryStream.of(queryBroker(brokerURI, query, queryLanguage, queryScope, queryTarget));
+    }
 }
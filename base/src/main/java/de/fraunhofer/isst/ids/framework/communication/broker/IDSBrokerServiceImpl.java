@@ -1,9 +1,19 @@
 package de.fraunhofer.isst.ids.framework.communication.broker;
 
 import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+import javax.annotation.PreDestroy;
+
+import de.fraunhofer.iais.eis.Connector;
 import de.fraunhofer.iais.eis.QueryLanguage;
 import de.fraunhofer.iais.eis.QueryScope;
 import de.fraunhofer.iais.eis.QueryTarget;
@@ -14,15 +24,13 @@ import de.fraunhofer.isst.ids.framework.daps.DapsTokenProvider;
 import de.fraunhofer.isst.ids.framework.util.ClientProvider;
 import de.fraunhofer.isst.ids.framework.util.IDSUtils;
 import lombok.AccessLevel;
-import lombok.AllArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
-import okhttp3.Call;
-import okhttp3.Callback;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
-import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
@@ -31,20 +39,99 @@ import org.springframework.stereotype.Service;
  **/
 @Slf4j
 @Service
-@AllArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class IDSBrokerServiceImpl implements IDSBrokerService {
 
     static final String     INFO_MODEL_VERSION = "4.0.0";
     static final Serializer SERIALIZER         = new Serializer();
+    static final int        DEFAULT_FAN_OUT_CONCURRENCY = 8;
+    static final Duration   DEFAULT_FAN_OUT_DEADLINE    = Duration.ofSeconds(30);
 
     ConfigurationContainer container;
     ClientProvider clientProvider;
     DapsTokenProvider tokenProvider;
+    BrokerQueryCache queryCache;
+    final BrokerDeltaTracker deltaTracker = new BrokerDeltaTracker();
+
+    /**
+     * Create an IDSBrokerServiceImpl without query cache.
+     *
+     * @param container the {@link ConfigurationContainer} managing the connector configuration
+     * @param clientProvider the {@link ClientProvider} providing HttpClients using the current connector configuration
+     * @param tokenProvider the {@link DapsTokenProvider} providing the DAT for the messages
+     */
+    public IDSBrokerServiceImpl(final ConfigurationContainer container,
+                                final ClientProvider clientProvider,
+                                final DapsTokenProvider tokenProvider) {
+        this(container, clientProvider, tokenProvider, new BrokerQueryCache(Duration.ZERO, Duration.ZERO, 0));
+    }
+
+    /**
+     * Create an IDSBrokerServiceImpl with a query cache configured by properties (disabled by default).
+     *
+     * @param container the {@link ConfigurationContainer} managing the connector configuration
+     * @param clientProvider the {@link ClientProvider} providing HttpClients using the current connector configuration
+     * @param tokenProvider the {@link DapsTokenProvider} providing the DAT for the messages
+     * @param queryCacheTtlSeconds time query results are fresh, 0 disables the cache
+     * @param queryCacheStaleSeconds time after the TTL a stale result is returned while it is refreshed
+     * @param queryCacheMaxBytes maximum total size of the cached query results
+     */
+    @Autowired
+    public IDSBrokerServiceImpl(final ConfigurationContainer container,
+                                final ClientProvider clientProvider,
+                                final DapsTokenProvider tokenProvider,
+                                @Value("${broker.query.cache.ttl.seconds:0}") final long queryCacheTtlSeconds,
+                                @Value("${broker.query.cache.stale.seconds:0}") final long queryCacheStaleSeconds,
+                                @Value("${broker.query.cache.max.bytes:16777216}") final long queryCacheMaxBytes) {
+        this(container, clientProvider, tokenProvider, new BrokerQueryCache(Duration.ofSeconds(queryCacheTtlSeconds),
+                                                                            Duration.ofSeconds(queryCacheStaleSeconds),
+                                                                            queryCacheMaxBytes));
+    }
+
+    /**
+     * Create an IDSBrokerServiceImpl with the given query cache.
+     *
+     * @param container the {@link ConfigurationContainer} managing the connector configuration
+     * @param clientProvider the {@link ClientProvider} providing HttpClients using the current connector configuration
+     * @param tokenProvider the {@link DapsTokenProvider} providing the DAT for the messages
+     * @param queryCache the cache for query results
+     */
+    public IDSBrokerServiceImpl(final ConfigurationContainer container,
+                                final ClientProvider clientProvider,
+                                final DapsTokenProvider tokenProvider,
+                                final BrokerQueryCache queryCache) {
+        this.container = container;
+        this.clientProvider = clientProvider;
+        this.tokenProvider = tokenProvider;
+        this.queryCache = queryCache;
+    }
+
+    /**
+     * Getter for the cache of query results, e.g. to invalidate results after changes at a broker.
+     *
+     * @return the BrokerQueryCache
+     */
+    public BrokerQueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Stop the background refresh of the query cache.
+     */
+    @PreDestroy
+    public void shutdown() {
+        queryCache.shutdown();
+    }
 
     /** {@inheritDoc} */
     @Override
     public Response removeResourceFromBroker(final String brokerURI, final Resource resource) throws IOException {
+        return removeResourceFromBroker(brokerURI, resource.getId());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Response removeResourceFromBroker(final String brokerURI, final URI resourceID) throws IOException {
         final var securityToken = tokenProvider.getDAT();
 
         if (log.isDebugEnabled()) {
@@ -56,15 +143,24 @@ public class IDSBrokerServiceImpl implements IDSBrokerService {
                 .buildResourceUnavailableMessage(securityToken,
                                                  INFO_MODEL_VERSION,
                                                  connectorID,
-                                                 resource);
+                                                 resourceID,
+                                                 IDSUtils.getGregorianNow());
 
-        final var body = BrokerIDSMessageUtils.buildRequestBody(header, null);
+        final var body = BrokerIDSMessageUtils.buildRequestBody(header, (String) null);
 
         if (log.isDebugEnabled()) {
             log.debug(String.format("Sending message to %s", brokerURI));
         }
 
-        return sendBrokerMessage(brokerURI, body);
+        final var response = sendBrokerMessage(brokerURI, body);
+        if (response.isSuccessful()) {
+            queryCache.invalidate(brokerURI);
+            final var state = deltaTracker.state(brokerURI);
+            synchronized (state) {
+                state.getResourceHashes().remove(resourceID);
+            }
+        }
+        return response;
     }
 
     /** {@inheritDoc} */
@@ -85,7 +181,16 @@ public class IDSBrokerServiceImpl implements IDSBrokerService {
             log.debug(String.format("Sending message to %s", brokerURI));
         }
 
-        return sendBrokerMessage(brokerURI, body);
+        final var response = sendBrokerMessage(brokerURI, body);
+        if (response.isSuccessful()) {
+            queryCache.invalidate(brokerURI);
+            //the broker now knows a version of the resource which was not hashed, resend it with the next delta
+            final var state = deltaTracker.state(brokerURI);
+            synchronized (state) {
+                state.getResourceHashes().remove(resource.getId());
+            }
+        }
+        return response;
     }
 
     /** {@inheritDoc} */
@@ -99,14 +204,19 @@ public class IDSBrokerServiceImpl implements IDSBrokerService {
 
         final var connectorID = container.getConnector().getId();
         final var header = BrokerIDSMessageUtils.buildUnavailableMessage(securityToken, INFO_MODEL_VERSION, connectorID);
-        final var payload = IDSUtils.buildSelfDeclaration(container.getConnector());
+        final var payload = container.getSelfDescriptionBytes();
         final var body = BrokerIDSMessageUtils.buildRequestBody(header, payload);
 
         if (log.isDebugEnabled()) {
             log.debug(String.format("Sending message to %s", brokerURI));
         }
 
-        return sendBrokerMessage(brokerURI, body);
+        final var response = sendBrokerMessage(brokerURI, body);
+        if (response.isSuccessful()) {
+            queryCache.invalidate(brokerURI);
+            deltaTracker.forget(brokerURI);
+        }
+        return response;
     }
 
     /** {@inheritDoc} */
@@ -120,52 +230,161 @@ public class IDSBrokerServiceImpl implements IDSBrokerService {
 
         final var connectorID = container.getConnector().getId();
         final var header = BrokerIDSMessageUtils.buildUpdateMessage(securityToken, INFO_MODEL_VERSION, connectorID);
-        final var payload = IDSUtils.buildSelfDeclaration(container.getConnector());
+        final var payload = container.getSelfDescriptionBytes();
         final var body = BrokerIDSMessageUtils.buildRequestBody(header, payload);
 
         if (log.isDebugEnabled()) {
             log.debug(String.format("Sending message to %s", brokerURI));
         }
 
-        return sendBrokerMessage(brokerURI, body);
+        final var response = sendBrokerMessage(brokerURI, body);
+        if (response.isSuccessful()) {
+            fullUpdateSent(brokerURI, payload);
+        }
+        return response;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<URI, BrokerResult> updateSelfDescriptionDeltaAtBroker(final String brokerURI) throws IOException {
+        final var payload = container.getSelfDescriptionBytes();
+        final var snapshot = deltaTracker.snapshot(payload);
+        final var state = deltaTracker.state(brokerURI);
+
+        //one delta at a time per broker, so the recorded state matches what the broker received
+        synchronized (state) {
+            final var securityToken = tokenProvider.getDAT();
+            final var connectorID = container.getConnector().getId();
+            final var issued = IDSUtils.getGregorianNow();
+
+            if (!snapshot.getConnectorHash().equals(state.getConnectorHash())) {
+                if (log.isDebugEnabled()) {
+                    log.debug(String.format("Connector metadata changed, sending full self-description to %s", brokerURI));
+                }
+                final var header = BrokerIDSMessageUtils.buildUpdateMessage(securityToken, INFO_MODEL_VERSION, connectorID);
+                final Request request;
+                try {
+                    request = new Request.Builder().url(brokerURI)
+                            .post(BrokerIDSMessageUtils.buildRequestBody(header, payload)).build();
+                } catch (IllegalArgumentException e) {
+                    return Map.of(connectorID, failedRequest(brokerURI, e));
+                }
+                final var results = new BrokerFanOut<URI>(clientProvider.getClient(), 1, DEFAULT_FAN_OUT_DEADLINE)
+                        .send(Map.of(connectorID, request)).join();
+                if (results.get(connectorID).isSuccess()) {
+                    queryCache.invalidate(brokerURI);
+                    state.fullUpdateSent(snapshot);
+                }
+                return results;
+            }
+
+            final var keys = new ArrayList<URI>();
+            final var requests = new LinkedHashMap<URI, Request>();
+            final var failed = new HashMap<URI, BrokerResult>();
+            final var changed = new HashMap<URI, String>();
+            final var resources = resourcesById(container.getConnector());
+            for (final var entry : snapshot.getResourceHashes().entrySet()) {
+                final var resource = resources.get(entry.getKey());
+                if (resource == null || entry.getValue().equals(state.getResourceHashes().get(entry.getKey()))) {
+                    continue;
+                }
+                final var header = BrokerIDSMessageUtils.buildResourceUpdateMessage(securityToken, INFO_MODEL_VERSION,
+                                                                                    connectorID, entry.getKey(), issued);
+                final var body = BrokerIDSMessageUtils.buildRequestBody(header, SERIALIZER.serialize(resource));
+                keys.add(entry.getKey());
+                try {
+                    requests.put(entry.getKey(), new Request.Builder().url(brokerURI).post(body).build());
+                } catch (IllegalArgumentException e) {
+                    failed.put(entry.getKey(), failedRequest(brokerURI, e));
+                }
+                changed.put(entry.getKey(), entry.getValue());
+            }
+            for (final var resourceID : state.getResourceHashes().keySet()) {
+                if (!snapshot.getResourceHashes().containsKey(resourceID)) {
+                    final var header = BrokerIDSMessageUtils.buildResourceUnavailableMessage(securityToken, INFO_MODEL_VERSION,
+                                                                                             connectorID, resourceID, issued);
+                    final var body = BrokerIDSMessageUtils.buildRequestBody(header, (String) null);
+                    keys.add(resourceID);
+                    try {
+                        requests.put(resourceID, new Request.Builder().url(brokerURI).post(body).build());
+                    } catch (IllegalArgumentException e) {
+                        failed.put(resourceID, failedRequest(brokerURI, e));
+                    }
+                }
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Sending %d resource changes to %s", requests.size(), brokerURI));
+            }
+
+            final var results = merge(keys, failed, new BrokerFanOut<URI>(clientProvider.getClient(), DEFAULT_FAN_OUT_CONCURRENCY,
+                                                                          DEFAULT_FAN_OUT_DEADLINE).send(requests).join());
+            if (results.values().stream().anyMatch(BrokerResult::isSuccess)) {
+                queryCache.invalidate(brokerURI);
+            }
+            results.forEach((resourceID, result) -> {
+                if (!result.isSuccess()) {
+                    return;
+                }
+                if (changed.containsKey(resourceID)) {
+                    state.getResourceHashes().put(resourceID, changed.get(resourceID));
+                } else {
+                    state.getResourceHashes().remove(resourceID);
+                }
+            });
+            return results;
+        }
     }
 
     /** {@inheritDoc} */
     @Override
     public List<Response> updateSelfDescriptionAtBrokers(final List<String> brokerUris) throws IOException {
+        return BrokerFanOut.responses(updateSelfDescriptionAtBrokersAsync(brokerUris).join());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<Map<String, BrokerResult>> updateSelfDescriptionAtBrokersAsync(final List<String> brokerUris) throws IOException {
+        return updateSelfDescriptionAtBrokersAsync(brokerUris, DEFAULT_FAN_OUT_CONCURRENCY, DEFAULT_FAN_OUT_DEADLINE);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<Map<String, BrokerResult>> updateSelfDescriptionAtBrokersAsync(final List<String> brokerUris,
+                                                                                           final int maxConcurrency,
+                                                                                           final Duration deadline) throws IOException {
         final var securityToken = tokenProvider.getDAT();
-        final var result = new ArrayList<Response>();
         final var connectorID = container.getConnector().getId();
         final var header = BrokerIDSMessageUtils.buildUpdateMessage(securityToken, INFO_MODEL_VERSION, connectorID);
-        final var payload = IDSUtils.buildSelfDeclaration(container.getConnector());
+        final var payload = container.getSelfDescriptionBytes();
         final var body = BrokerIDSMessageUtils.buildRequestBody(header, payload);
 
-        for (final var uri : brokerUris) {
-            if (log.isDebugEnabled()) {
-                log.debug(String.format("Sending message to %s", uri));
+        //a broker listed twice is only sent the update once and has a single entry in the result
+        final var keys = List.copyOf(new LinkedHashSet<>(brokerUris));
+        final var requests = new LinkedHashMap<String, Request>();
+        final var failed = new HashMap<String, BrokerResult>();
+        for (final var uri : keys) {
+            try {
+                requests.put(uri, new Request.Builder().url(uri).post(body).build());
+            } catch (IllegalArgumentException e) {
+                failed.put(uri, failedRequest(uri, e));
             }
+        }
 
-            clientProvider.getClient().newCall(new Request.Builder().url(uri).post(body).build()).enqueue(
-                    new Callback() {
-                        @Override
-                        public void onFailure(@NotNull Call call, @NotNull IOException e) {
-                            if (log.isWarnEnabled()) {
-                                log.warn(String.format("Connection to Broker %s failed!", uri));
-                                log.warn(e.getMessage(), e);
-                            }
-                        }
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Sending message to %d brokers, at most %d in parallel", requests.size(), maxConcurrency));
+        }
 
-                        @Override
-                        public void onResponse(@NotNull Call call, @NotNull Response response) {
-                            if (log.isInfoEnabled()) {
-                                log.info(String.format("Received response from %s", uri));
-                            }
-                            result.add(response);
+        return new BrokerFanOut<String>(clientProvider.getClient(), maxConcurrency, deadline).send(requests)
+                .thenApply(sent -> merge(keys, failed, sent))
+                .thenApply(results -> {
+                    results.forEach((uri, result) -> {
+                        if (result.isSuccess()) {
+                            fullUpdateSent(uri, payload);
                         }
-                    }
-            );
-        }
-        return result;
+                    });
+                    return results;
+                });
     }
 
     /** {@inheritDoc} */
@@ -175,6 +394,36 @@ public class IDSBrokerServiceImpl implements IDSBrokerService {
                                 final QueryLanguage queryLanguage,
                                 final QueryScope queryScope,
                                 final QueryTarget queryTarget) throws IOException {
+        return queryCache.get(brokerURI, query, queryLanguage, queryScope, queryTarget,
+                              () -> sendQuery(brokerURI, query, queryLanguage, queryScope, queryTarget));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public BrokerQueryStream queryBrokerStreaming(final String brokerURI,
+                                                 final String query,
+                                                 final QueryLanguage queryLanguage,
+                                                 final QueryScope queryScope,
+                                                 final QueryTarget queryTarget) throws IOException {
+        return BrokerQueryStream.of(sendQuery(brokerURI, query, queryLanguage, queryScope, queryTarget));
+    }
+
+    /**
+     * Build a QueryMessage and send it to the broker.
+     *
+     * @param brokerURI     the URI of the broker the message is sent to
+     * @param query         the query as payload for the QueryMessage
+     * @param queryLanguage the Language of the Query
+     * @param queryScope the Scope of the Query
+     * @param queryTarget the type of IDS Components that are queried
+     * @return the brokers response to the query request
+     * @throws IOException if the built message could not be serialized
+     */
+    private Response sendQuery(final String brokerURI,
+                               final String query,
+                               final QueryLanguage queryLanguage,
+                               final QueryScope queryScope,
+                               final QueryTarget queryTarget) throws IOException {
         final var securityToken = tokenProvider.getDAT();
 
         if (log.isDebugEnabled()) {
@@ -192,6 +441,79 @@ public class IDSBrokerServiceImpl implements IDSBrokerService {
         return sendBrokerMessage(brokerURI, body);
     }
 
+    /**
+     * Record that the given self-description was sent to a broker.
+     *
+     * @param brokerURI URI of the broker
+     * @param selfDescription the sent self-description
+     */
+    private void fullUpdateSent(final String brokerURI, final byte[] selfDescription) {
+        queryCache.invalidate(brokerURI);
+        final var snapshot = deltaTracker.snapshot(selfDescription);
+        final var state = deltaTracker.state(brokerURI);
+        synchronized (state) {
+            state.fullUpdateSent(snapshot);
+        }
+    }
+
+    /**
+     * Collect the offered and requested resources of all catalogs of a connector.
+     *
+     * @param connector the connector
+     * @return the resources by ID
+     */
+    private static Map<URI, Resource> resourcesById(final Connector connector) {
+        final var resources = new HashMap<URI, Resource>();
+        if (connector.getResourceCatalog() == null) {
+            return resources;
+        }
+        for (final var catalog : connector.getResourceCatalog()) {
+            if (catalog.getOfferedResource() != null) {
+                catalog.getOfferedResource().forEach(resource -> resources.put(resource.getId(), resource));
+            }
+            if (catalog.getRequestedResource() != null) {
+                catalog.getRequestedResource().forEach(resource -> resources.put(resource.getId(), resource));
+            }
+        }
+        return resources;
+    }
+
+    /**
+     * Create the result for a request that could not be built (e.g. because the broker URI is not a valid http url).
+     *
+     * @param brokerURI URI of the broker
+     * @param error the error building the request
+     * @return the failed BrokerResult
+     */
+    private static BrokerResult failedRequest(final String brokerURI, final IllegalArgumentException error) {
+        if (log.isErrorEnabled()) {
+            log.error(String.format("Could not build request to broker %s: %s", brokerURI, error.getMessage()));
+        }
+        return BrokerResult.failed(brokerURI, error, Duration.ZERO);
+    }
+
+    /**
+     * Merge the results of the sent requests with the results of the requests that could not be built.
+     *
+     * @param keys all keys in the order of the result
+     * @param failed the results of the requests that could not be built
+     * @param sent the results of the sent requests
+     * @param <K> key identifying a request
+     * @return the results of all keys, in the given order
+     */
+    private static <K> Map<K, BrokerResult> merge(final List<K> keys,
+                                                  final Map<K, BrokerResult> failed,
+                                                  final Map<K, BrokerResult> sent) {
+        if (failed.isEmpty()) {
+            return sent;
+        }
+        final var results = new LinkedHashMap<K, BrokerResult>();
+        for (final var key : keys) {
+            results.put(key, failed.containsKey(key) ? failed.get(key) : sent.get(key));
+        }
+        return results;
+    }
+
     /**
      * Send the given RequestBody to the broker at the given URI and return the response.
      *
@@ -0,0 +1,67 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.net.URI;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import org.json.JSONObject;
+
+/**
+ * A message waiting in the {@link BrokerOutboundQueue}. Only the intent is stored, header and DAT are built
+ * when the message is sent.
+ */
+@Getter
+@AllArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+class QueuedBrokerMessage {
+
+    /**
+     * Type of a queued message.
+     */
+    enum Type {
+        CONNECTOR_UPDATE,
+        CONNECTOR_UNAVAILABLE,
+        RESOURCE_UPDATE,
+        RESOURCE_UNAVAILABLE
+    }
+
+    String brokerURI;
+    Type type;
+    URI resourceID;
+    String payload;
+
+    /**
+     * Key for deduplication: a newer message replaces a queued one for the same broker and resource
+     * (or the connector itself for connector messages).
+     *
+     * @return the key of the message
+     */
+    String getKey() {
+        return brokerURI + " " + (resourceID != null ? resourceID : "connector");
+    }
+
+    /**
+     * @return the message as JSON journal entry
+     */
+    JSONObject toJson() {
+        return new JSONObject()
+                .put("broker", brokerURI)
+                .put("type", type.name())
+                .putOpt("resource", resourceID != null ? resourceID.toString() : null)
+                .putOpt("payload", payload);
+    }
+
+    /**
+     * @param json a JSON journal entry
+     * @return the message of the entry
+     */
+    static QueuedBrokerMessage fromJson(final JSONObject json) {
+        final var resource = json.optString("resource", null);
+        return new QueuedBrokerMessage(json.getString("broker"),
+                                       Type.valueOf(json.getString("type")),
+                                       resource != null ? URI.create(resource) : null,
+                                       json.optString("payload", null));
+    }
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import okhttp3.RequestBody;
 import okhttp3.Response;
@@ -80,4 +81,102 @@ public interface HttpService {
      */
     Response getWithHeaders(URI target, Map<String, String> headers) throws IOException;
 
+    /**
+     * Sends a http POST request to the target without blocking the calling thread.
+     *
+     * @param requestBody the body of the request
+     * @param target the target host of the request
+     * @return future of the HttpResponse, completed exceptionally with an IOException if the request fails or the
+     * response is not successful; cancelling it cancels the http call
+     */
+    default CompletableFuture<Response> sendAsync(final RequestBody requestBody, final URI target) {
+        return sendAsync(requestBody, target, null);
+    }
+
+    /**
+     * Sends a http POST request to the target without blocking the calling thread.
+     * The default implementation sends the request blocking the calling thread and ignores the timeout,
+     * implementations should override it.
+     *
+     * @param requestBody the body of the request
+     * @param target the target host of the request
+     * @param timeout max timeout for the whole http request (null = timeouts of the client are used)
+     * @return future of the HttpResponse, completed exceptionally with an IOException if the request fails or the
+     * response is not successful; cancelling it cancels the http call
+     */
+    default CompletableFuture<Response> sendAsync(final RequestBody requestBody, final URI target, final Duration timeout) {
+        try {
+            return CompletableFuture.completedFuture(send(requestBody, target));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Sends a http POST request with extra header fields to the target without blocking the calling thread.
+     *
+     * @param requestBody the body of the request
+     * @param target the target host of the request
+     * @param headers a Map of http headers for the header of the built request
+     * @return future of the HttpResponse, completed exceptionally with an IOException if the request fails or the
+     * response is not successful; cancelling it cancels the http call
+     */
+    default CompletableFuture<Response> sendWithHeadersAsync(final RequestBody requestBody,
+                                                             final URI target,
+                                                             final Map<String, String> headers) {
+        return sendWithHeadersAsync(requestBody, target, headers, null);
+    }
+
+    /**
+     * Sends a http POST request with extra header fields to the target without blocking the calling thread.
+     * The default implementation sends the request blocking the calling thread and ignores the timeout,
+     * implementations should override it.
+     *
+     * @param requestBody the body of the request
+     * @param target the target host of the request
+     * @param headers a Map of http headers for the header of the built request
+     * @param timeout max timeout for the whole http request (null = timeouts of the client are used)
+     * @return future of the HttpResponse, completed exceptionally with an IOException if the request fails or the
+     * response is not successful; cancelling it cancels the http call
+     */
+    default CompletableFuture<Response> sendWithHeadersAsync(final RequestBody requestBody,
+                                                             final URI target,
+                                                             final Map<String, String> headers,
+                                                             final Duration timeout) {
+        try {
+            return CompletableFuture.completedFuture(sendWithHeaders(requestBody, target, headers));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Sends a http GET request to the target without blocking the calling thread.
+     *
+     * @param target the target host of the request
+     * @return future of the HttpResponse, completed exceptionally with an IOException if the request fails or the
+     * response is not successful; cancelling it cancels the http call
+     */
+    default CompletableFuture<Response> getAsync(final URI target) {
+        return getAsync(target, null);
+    }
+
+    /**
+     * Sends a http GET request to the target without blocking the calling thread.
+     * The default implementation sends the request blocking the calling thread and ignores the timeout,
+     * implementations should override it.
+     *
+     * @param target the target host of the request
+     * @param timeout max timeout for the whole http request (null = timeouts of the client are used)
+     * @return future of the HttpResponse, completed exceptionally with an IOException if the request fails or the
+     * response is not successful; cancelling it cancels the http call
+     */
+    default CompletableFuture<Response> getAsync(final URI target, final Duration timeout) {
+        try {
+            return CompletableFuture.completedFuture(get(target));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
 }
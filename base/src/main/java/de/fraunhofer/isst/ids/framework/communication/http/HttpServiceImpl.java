@@ -5,6 +5,8 @@ import java.net.URI;
 import java.time.Duration;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import de.fraunhofer.isst.ids.framework.util.ClientProvider;
 import lombok.AccessLevel;
@@ -12,6 +14,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
@@ -22,6 +26,7 @@ import org.springframework.stereotype.Service;
 
 /**
  * Service for sending Http Requests using configuration settings.
+ * Asynchronous requests are enqueued at the OkHttp dispatcher, their futures are completed on its threads.
  */
 @Slf4j
 @Service
@@ -122,6 +127,28 @@ public class HttpServiceImpl implements HttpService {
         return sendRequest(request, getClientWithSettings());
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<Response> sendAsync(final RequestBody requestBody, final URI target, final Duration timeout) {
+        return sendRequestAsync(buildRequest(requestBody, target), getClientWithSettings(), timeout);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<Response> sendWithHeadersAsync(final RequestBody requestBody,
+                                                            final URI target,
+                                                            final Map<String, String> headers,
+                                                            final Duration timeout) {
+        return sendRequestAsync(buildWithHeaders(requestBody, target, headers), getClientWithSettings(), timeout);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<Response> getAsync(final URI target, final Duration timeout) {
+        final var request = new Request.Builder().url(target.toString()).get().build();
+        return sendRequestAsync(request, getClientWithSettings(), timeout);
+    }
+
     /**
      * Build a {@link Request} from given {@link RequestBody} and target {@link URI}.
      *
@@ -190,8 +217,56 @@ public class HttpServiceImpl implements HttpService {
             log.info("Request is HTTPS: " + request.isHttps());
         }
 
-        final var response = client.newCall(request).execute();
+        return checkResponse(client.newCall(request).execute());
+    }
 
+    /**
+     * Enqueue a generated request http message to the defined address, without blocking the calling thread.
+     *
+     * @param request the Request to send
+     * @param client {@link OkHttpClient} for sending Request
+     * @param timeout max timeout for the whole call (null = timeouts of the client are used)
+     * @return future of the Response, completed on an OkHttp dispatcher thread
+     */
+    private CompletableFuture<Response> sendRequestAsync(final Request request, final OkHttpClient client, final Duration timeout) {
+        final var call = client.newCall(request);
+        if (timeout != null) {
+            call.timeout().timeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        final var future = new CallFuture(call);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(final Call failedCall, final IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(final Call respondedCall, final Response response) {
+                try {
+                    if (!future.complete(checkResponse(response))) {
+                        //future was cancelled in the meantime
+                        response.close();
+                    }
+                } catch (IOException e) {
+                    future.completeExceptionally(e);
+                } catch (RuntimeException e) {
+                    //closing again is a no-op if checkResponse already consumed the body
+                    response.close();
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Check the status of a Response, shared by the blocking and the asynchronous requests.
+     *
+     * @param response the received Response
+     * @return the response, if it was successful
+     * @throws IOException if the response code is not successful (containing the response body)
+     */
+    private Response checkResponse(final Response response) throws IOException {
         if (!response.isSuccessful()) {
             if (log.isErrorEnabled()) {
                 log.error("Error while sending the request!");
@@ -229,6 +304,26 @@ public class HttpServiceImpl implements HttpService {
         return provider.getClient();
     }
 
+    /**
+     * Future of an enqueued OkHttp call, cancelling the future cancels the call.
+     */
+    private static class CallFuture extends CompletableFuture<Response> {
+        private final Call call;
+
+        CallFuture(final Call call) {
+            this.call = call;
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            final var cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                call.cancel();
+            }
+            return cancelled;
+        }
+    }
+
     /**
      * Inner class, managing timeout settings for custom HttpClients.
      */
@@ -3,6 +3,7 @@ package de.fraunhofer.isst.ids.framework.communication.http;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import de.fraunhofer.isst.ids.framework.daps.ClaimsException;
 import okhttp3.RequestBody;
@@ -33,4 +34,115 @@ public interface IDSHttpService {
      * @throws ClaimsException if DAT of response is invalid or cannot be parsed
      */
     Map<String, String> sendWithHeadersAndCheckDat(RequestBody body, URI target, Map<String, String> headers) throws IOException, FileUploadException, ClaimsException;
+
+    /**
+     * The default implementation reads the response completely using {@link #sendAndCheckDat(RequestBody, URI)},
+     * implementations should override it.
+     *
+     * @param body requestBody to be sent
+     * @param target targetURI of the request
+     * @return the response with deserialized header and unread payload stream (must be closed after use)
+     * @throws IOException if request cannot be sent or the header cannot be deserialized
+     * @throws FileUploadException if response cannot be parsed as multipart
+     * @throws ClaimsException if DAT of response is invalid or cannot be parsed
+     */
+    default IDSMultipartResponse sendAndCheckDatMultipart(final RequestBody body, final URI target)
+            throws IOException, FileUploadException, ClaimsException {
+        return IDSMultipartResponse.fromMap(sendAndCheckDat(body, target));
+    }
+
+    /**
+     * The default implementation reads the response completely using
+     * {@link #sendWithHeadersAndCheckDat(RequestBody, URI, Map)}, implementations should override it.
+     *
+     * @param body requestBody to be sent
+     * @param target targetURI of the request
+     * @param headers additional headers for the Http header
+     * @return the response with deserialized header and unread payload stream (must be closed after use)
+     * @throws IOException if request cannot be sent or the header cannot be deserialized
+     * @throws FileUploadException if response cannot be parsed as multipart
+     * @throws ClaimsException if DAT of response is invalid or cannot be parsed
+     */
+    default IDSMultipartResponse sendWithHeadersAndCheckDatMultipart(final RequestBody body,
+                                                                     final URI target,
+                                                                     final Map<String, String> headers)
+            throws IOException, FileUploadException, ClaimsException {
+        return IDSMultipartResponse.fromMap(sendWithHeadersAndCheckDat(body, target, headers));
+    }
+
+    /**
+     * Send the request without blocking the calling thread, the response is parsed and its DAT is validated
+     * on a bounded executor.
+     * The default implementation sends the request blocking the calling thread, implementations should override it.
+     *
+     * @param body requestBody to be sent
+     * @param target targetURI of the request
+     * @return future of the response with deserialized header and unread payload stream (must be closed after use),
+     * completed exceptionally with an IOException, FileUploadException or ClaimsException like the blocking variant,
+     * or with a RejectedExecutionException if too many responses are waiting for validation
+     */
+    default CompletableFuture<IDSMultipartResponse> sendAndCheckDatMultipartAsync(final RequestBody body, final URI target) {
+        try {
+            return CompletableFuture.completedFuture(sendAndCheckDatMultipart(body, target));
+        } catch (IOException | FileUploadException | ClaimsException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Send the request with additional headers without blocking the calling thread, the response is parsed and its
+     * DAT is validated on a bounded executor.
+     * The default implementation sends the request blocking the calling thread, implementations should override it.
+     *
+     * @param body requestBody to be sent
+     * @param target targetURI of the request
+     * @param headers additional headers for the Http header
+     * @return future of the response with deserialized header and unread payload stream (must be closed after use),
+     * completed exceptionally like {@link #sendAndCheckDatMultipartAsync(RequestBody, URI)}
+     */
+    default CompletableFuture<IDSMultipartResponse> sendWithHeadersAndCheckDatMultipartAsync(final RequestBody body,
+                                                                                             final URI target,
+                                                                                             final Map<String, String> headers) {
+        try {
+            return CompletableFuture.completedFuture(sendWithHeadersAndCheckDatMultipart(body, target, headers));
+        } catch (IOException | FileUploadException | ClaimsException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Send the request without blocking the calling thread, see {@link #sendAndCheckDatMultipartAsync(RequestBody, URI)}.
+     * The default implementation sends the request blocking the calling thread, implementations should override it.
+     *
+     * @param body requestBody to be sent
+     * @param target targetURI of the request
+     * @return future of the Multipart Map with header and payload part of response
+     */
+    default CompletableFuture<Map<String, String>> sendAndCheckDatAsync(final RequestBody body, final URI target) {
+        try {
+            return CompletableFuture.completedFuture(sendAndCheckDat(body, target));
+        } catch (IOException | FileUploadException | ClaimsException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Send the request with additional headers without blocking the calling thread,
+     * see {@link #sendAndCheckDatMultipartAsync(RequestBody, URI)}.
+     * The default implementation sends the request blocking the calling thread, implementations should override it.
+     *
+     * @param body requestBody to be sent
+     * @param target targetURI of the request
+     * @param headers additional headers for the Http header
+     * @return future of the Multipart Map with header and payload part of response
+     */
+    default CompletableFuture<Map<String, String>> sendWithHeadersAndCheckDatAsync(final RequestBody body,
+                                                                                   final URI target,
+                                                                                   final Map<String, String> headers) {
+        try {
+            return CompletableFuture.completedFuture(sendWithHeadersAndCheckDat(body, target, headers));
+        } catch (IOException | FileUploadException | ClaimsException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 }
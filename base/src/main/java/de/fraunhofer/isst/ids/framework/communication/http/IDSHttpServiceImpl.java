@@ -1,40 +1,121 @@
 package de.fraunhofer.isst.ids.framework.communication.http;
 
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.fraunhofer.iais.eis.ConnectorDeployMode;
 import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
 import de.fraunhofer.isst.ids.framework.daps.ClaimsException;
 import de.fraunhofer.isst.ids.framework.daps.DapsValidator;
-import de.fraunhofer.isst.ids.framework.util.MultipartStringParser;
 import lombok.AccessLevel;
-import lombok.AllArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import org.apache.commons.fileupload.FileUploadException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
  * Implementation Class of IDSHttpService.
+ * Responses of asynchronous requests are parsed and validated on a bounded executor, not on the OkHttp dispatcher threads.
  */
 @Slf4j
 @Service
-@AllArgsConstructor
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class IDSHttpServiceImpl implements IDSHttpService {
 
+    static final int DEFAULT_VALIDATION_QUEUE_SIZE = 1024;
+
     HttpService httpService;
     DapsValidator dapsValidator;
     ConfigurationContainer configurationContainer;
+    ThreadPoolExecutor validationExecutor;
+
+    /**
+     * Create an IDSHttpServiceImpl validating asynchronous responses with one thread per available processor.
+     *
+     * @param httpService the {@link HttpService} sending the requests
+     * @param dapsValidator the {@link DapsValidator} checking the DAT of responses
+     * @param configurationContainer the connector configuration
+     */
+    public IDSHttpServiceImpl(final HttpService httpService,
+                              final DapsValidator dapsValidator,
+                              final ConfigurationContainer configurationContainer) {
+        this(httpService, dapsValidator, configurationContainer, 0, DEFAULT_VALIDATION_QUEUE_SIZE);
+    }
+
+    /**
+     * Create an IDSHttpServiceImpl.
+     *
+     * @param httpService the {@link HttpService} sending the requests
+     * @param dapsValidator the {@link DapsValidator} checking the DAT of responses
+     * @param configurationContainer the connector configuration
+     * @param validationThreads number of threads parsing and validating asynchronous responses (0 = available processors)
+     * @param validationQueueSize number of responses waiting for validation, further responses are rejected
+     */
+    @Autowired
+    public IDSHttpServiceImpl(final HttpService httpService,
+                              final DapsValidator dapsValidator,
+                              final ConfigurationContainer configurationContainer,
+                              @Value("${http.validation.threads:0}") final int validationThreads,
+                              @Value("${http.validation.queue.size:1024}") final int validationQueueSize) {
+        this.httpService = httpService;
+        this.dapsValidator = dapsValidator;
+        this.configurationContainer = configurationContainer;
+
+        final var threads = validationThreads > 0 ? validationThreads : Runtime.getRuntime().availableProcessors();
+        final var threadCount = new AtomicInteger();
+        this.validationExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(validationQueueSize), runnable -> {
+                    final var thread = new Thread(runnable, "ids-response-validation-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.validationExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Stop the executor validating asynchronous responses.
+     */
+    @PreDestroy
+    public void shutdown() {
+        validationExecutor.shutdown();
+    }
 
     /** {@inheritDoc} */
     @Override
     public Map<String, String> sendAndCheckDat(final RequestBody body, final URI target)
             throws IOException, FileUploadException, ClaimsException {
+        try (var response = sendAndCheckDatMultipart(body, target)) {
+            return response.toMap();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, String> sendWithHeadersAndCheckDat(final RequestBody body,
+                                                          final URI target,
+                                                          final Map<String, String> headers) throws IOException, FileUploadException, ClaimsException {
+        try (var response = sendWithHeadersAndCheckDatMultipart(body, target, headers)) {
+            return response.toMap();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public IDSMultipartResponse sendAndCheckDatMultipart(final RequestBody body, final URI target)
+            throws IOException, FileUploadException, ClaimsException {
         Response response;
         try {
             response = httpService.send(body, target);
@@ -49,9 +130,10 @@ public class IDSHttpServiceImpl implements IDSHttpService {
 
     /** {@inheritDoc} */
     @Override
-    public Map<String, String> sendWithHeadersAndCheckDat(final RequestBody body,
-                                                          final URI target,
-                                                          final Map<String, String> headers) throws IOException, FileUploadException, ClaimsException {
+    public IDSMultipartResponse sendWithHeadersAndCheckDatMultipart(final RequestBody body,
+                                                                    final URI target,
+                                                                    final Map<String, String> headers)
+            throws IOException, FileUploadException, ClaimsException {
         Response response;
         try {
             response = httpService.sendWithHeaders(body, target, headers);
@@ -64,33 +146,152 @@ public class IDSHttpServiceImpl implements IDSHttpService {
         return checkDatFromResponse(response);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<IDSMultipartResponse> sendAndCheckDatMultipartAsync(final RequestBody body, final URI target) {
+        return checkDatAsync(httpService.sendAsync(body, target));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<IDSMultipartResponse> sendWithHeadersAndCheckDatMultipartAsync(final RequestBody body,
+                                                                                           final URI target,
+                                                                                           final Map<String, String> headers) {
+        return checkDatAsync(httpService.sendWithHeadersAsync(body, target, headers));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<Map<String, String>> sendAndCheckDatAsync(final RequestBody body, final URI target) {
+        return toMapAsync(sendAndCheckDatMultipartAsync(body, target));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public CompletableFuture<Map<String, String>> sendWithHeadersAndCheckDatAsync(final RequestBody body,
+                                                                                 final URI target,
+                                                                                 final Map<String, String> headers) {
+        return toMapAsync(sendWithHeadersAndCheckDatMultipartAsync(body, target, headers));
+    }
+
+    /**
+     * Parse and validate the response of an asynchronous request on the validation executor.
+     *
+     * @param responseFuture future of the response of an asynchronous request
+     * @return future of the parsed response, cancelling it cancels the request
+     */
+    private CompletableFuture<IDSMultipartResponse> checkDatAsync(final CompletableFuture<Response> responseFuture) {
+        final var result = new CompletableFuture<IDSMultipartResponse>();
+        responseFuture.whenComplete((response, error) -> {
+            if (error != null) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Message could not be sent!");
+                }
+                result.completeExceptionally(error);
+                return;
+            }
+            try {
+                validationExecutor.execute(() -> {
+                    try {
+                        final var multipartResponse = checkDatFromResponse(response);
+                        if (!result.complete(multipartResponse)) {
+                            //result was cancelled in the meantime
+                            multipartResponse.close();
+                        }
+                    } catch (IOException | FileUploadException | ClaimsException e) {
+                        result.completeExceptionally(e);
+                    } catch (RuntimeException | Error e) {
+                        //closing again is a no-op if the response was already closed
+                        response.close();
+                        if (log.isWarnEnabled()) {
+                            log.warn(String.format("Response could not be validated: %s", e.getMessage()));
+                        }
+                        result.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                response.close();
+                if (log.isWarnEnabled()) {
+                    log.warn("Too many responses waiting for validation, rejecting response!");
+                }
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((multipartResponse, error) -> {
+            if (result.isCancelled()) {
+                responseFuture.cancel(true);
+            }
+        });
+        return result;
+    }
+
     /**
+     * Read asynchronous responses into Multipart Maps, in the thread completing the validation (a thread of the
+     * validation executor, or the calling thread if the validation already completed).
+     *
+     * @param responseFuture future of the parsed response
+     * @return future of the Multipart Map with header and payload part of response
+     */
+    private CompletableFuture<Map<String, String>> toMapAsync(final CompletableFuture<IDSMultipartResponse> responseFuture) {
+        final var result = responseFuture.thenApply(response -> {
+            try (response) {
+                return response.toMap();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+        result.whenComplete((map, error) -> {
+            if (result.isCancelled()) {
+                responseFuture.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Parse the response once and check the DAT of its header.
+     *
      * @param response {@link Response} from an IDS Http request
-     * @return Multipart Map with header and payload part of response
-     * @throws IOException if request cannot be sent
-     * @throws FileUploadException if response cannot be parsed to multipart map
+     * @return the parsed response, the payload is not read yet
+     * @throws IOException if the response cannot be read or its header cannot be deserialized
+     * @throws FileUploadException if response cannot be parsed as multipart
      * @throws ClaimsException if DAT of response is invalid or cannot be parsed
      */
-    private Map<String, String> checkDatFromResponse(final Response response)
+    private IDSMultipartResponse checkDatFromResponse(final Response response)
             throws IOException, ClaimsException, FileUploadException {
+        final IDSMultipartResponse multipartResponse;
+        try {
+            multipartResponse = IDSMultipartResponse.parse(response);
+        } catch (IOException | FileUploadException e) {
+            response.close();
+            if (log.isWarnEnabled()) {
+                log.warn("Could not parse incoming response to multipart map!");
+            }
+            throw e;
+        }
+
         //if connector is set to test deployment: ignore DAT Tokens
         final var ignoreDAT = configurationContainer.getConfigModel().getConnectorDeployMode() == ConnectorDeployMode.TEST_DEPLOYMENT;
-        final var responseString = response.body().string();
-        final var valid = ignoreDAT || dapsValidator.checkDat(responseString);
+        if (ignoreDAT) {
+            return multipartResponse;
+        }
 
-        if(!valid){
+        boolean valid;
+        try {
+            valid = dapsValidator.checkDat(multipartResponse.getHeader());
+        } catch (IOException e) {
             if (log.isWarnEnabled()) {
-                log.warn("DAT of incoming response is not valid!");
+                log.warn("Response header cannot be deserialized to IDS Message!");
             }
-            throw new ClaimsException("DAT of incoming response is not valid!");
+            valid = false;
         }
-        try {
-            return MultipartStringParser.stringToMultipart(responseString);
-        } catch (FileUploadException e) {
+        if (!valid) {
+            multipartResponse.close();
             if (log.isWarnEnabled()) {
-                log.warn("Could not parse incoming response to multipart map!");
+                log.warn("DAT of incoming response is not valid!");
             }
-            throw e;
+            throw new ClaimsException("DAT of incoming response is not valid!");
         }
+        return multipartResponse;
     }
 }
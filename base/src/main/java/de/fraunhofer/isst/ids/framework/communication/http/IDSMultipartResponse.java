@@ -0,0 +1,182 @@
+package de.fraunhofer.isst.ids.framework.communication.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.fraunhofer.iais.eis.Message;
+import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
+import de.fraunhofer.isst.ids.framework.util.MultipartStreamReader;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Response;
+import org.apache.commons.fileupload.FileUploadException;
+
+/**
+ * A multipart IDS response, parsed in a single pass from the stream of the response body
+ * (using the {@link MultipartStreamReader} and the boundary from the Content-Type header).
+ *
+ * The header part is read when the response is parsed and deserialized at most once, the payload part is not
+ * read until {@link #getPayload()} is consumed. The response must be closed after use.
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class IDSMultipartResponse implements Closeable {
+
+    static final String HEADER_PART = "header";
+    static final String PAYLOAD_PART = "payload";
+    static final Serializer SERIALIZER = new Serializer();
+
+    final Response response;
+    final String headerString;
+    final InputStream payload;
+    final Charset payloadCharset;
+    Message header;
+
+    /**
+     * Create an IDSMultipartResponse.
+     *
+     * @param response the underlying http response (closed with this object), null if it was already read
+     * @param headerString the header part as string
+     * @param payload the unread payload part (null if the response has no payload)
+     * @param payloadCharset the charset of the payload part
+     */
+    IDSMultipartResponse(final Response response, final String headerString, final InputStream payload, final Charset payloadCharset) {
+        this.response = response;
+        this.headerString = headerString;
+        this.payload = payload;
+        this.payloadCharset = payloadCharset;
+    }
+
+    /**
+     * Read the header part of a multipart response, the payload part is left unread in the response stream.
+     *
+     * @param response a multipart response
+     * @return the IDSMultipartResponse holding the header and the unread payload
+     * @throws IOException if the response body cannot be read
+     * @throws FileUploadException if the response cannot be parsed as multipart or has no header part
+     */
+    public static IDSMultipartResponse parse(final Response response) throws IOException, FileUploadException {
+        final var body = response.body();
+        if (body == null) {
+            throw new FileUploadException("Response has no body!");
+        }
+        final var boundary = MultipartStreamReader.boundaryOf(response.header("Content-Type"));
+        if (boundary == null) {
+            throw new FileUploadException("Response is not multipart or has no boundary!");
+        }
+        final var reader = new MultipartStreamReader(body.byteStream(), boundary);
+
+        String headerString = null;
+        MultipartStreamReader.Part part;
+        while ((part = reader.nextPart()) != null) {
+            if (HEADER_PART.equals(part.getName())) {
+                headerString = part.getString();
+            } else if (PAYLOAD_PART.equals(part.getName())) {
+                if (headerString == null) {
+                    throw new FileUploadException("Payload part received before the header part!");
+                }
+                return new IDSMultipartResponse(response, headerString, part.getInputStream(), part.getCharset());
+            }
+        }
+        if (headerString == null) {
+            throw new FileUploadException("Response has no header part!");
+        }
+        return new IDSMultipartResponse(response, headerString, null, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create an IDSMultipartResponse from a Multipart Map of a successful response, which was already read completely.
+     *
+     * @param multipartMap Multipart Map with header and payload part of a response
+     * @return the IDSMultipartResponse holding header and payload of the map
+     */
+    static IDSMultipartResponse fromMap(final Map<String, String> multipartMap) {
+        final var payload = multipartMap.get(PAYLOAD_PART);
+        return new IDSMultipartResponse(null, multipartMap.get(HEADER_PART),
+                payload == null ? null : new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Getter for the header of the response, deserialized on first access.
+     *
+     * @return the header as IDS {@link Message}
+     * @throws IOException if the header cannot be deserialized to an IDS Message
+     */
+    public synchronized Message getHeader() throws IOException {
+        if (header == null) {
+            header = SERIALIZER.deserialize(headerString, Message.class);
+        }
+        return header;
+    }
+
+    /**
+     * Getter for the header of the response as received.
+     *
+     * @return the header part as string
+     */
+    public String getHeaderString() {
+        return headerString;
+    }
+
+    /**
+     * Getter for the payload of the response, which is read directly from the response body.
+     * It can be consumed only once.
+     *
+     * @return the payload part as stream, null if the response has no payload
+     */
+    public InputStream getPayload() {
+        return payload;
+    }
+
+    /**
+     * Getter for the charset of the payload part (from its Content-Type, UTF-8 if not given).
+     *
+     * @return the charset of the payload
+     */
+    public Charset getPayloadCharset() {
+        return payloadCharset;
+    }
+
+    /**
+     * Getter for the http status code of the response.
+     *
+     * @return the status code
+     */
+    public int getCode() {
+        //responses created from a Multipart Map are only returned for successful requests
+        return response != null ? response.code() : 200;
+    }
+
+    /**
+     * Read the response into a Multipart Map (header and payload part as strings), consuming the payload.
+     *
+     * @return Multipart Map with header and payload part of response
+     * @throws IOException if the payload cannot be read
+     */
+    public Map<String, String> toMap() throws IOException {
+        final var map = new HashMap<String, String>();
+        map.put(HEADER_PART, headerString);
+        if (payload != null) {
+            map.put(PAYLOAD_PART, new String(payload.readAllBytes(), payloadCharset));
+        }
+        return map;
+    }
+
+    /**
+     * Close the underlying response, unread parts are discarded.
+     */
+    @Override
+    public void close() {
+        if (response != null) {
+            response.close();
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package de.fraunhofer.isst.ids.framework.configuration;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 
 import de.fraunhofer.iais.eis.ConfigurationModel;
 import de.fraunhofer.iais.eis.Connector;
 import de.fraunhofer.isst.ids.framework.util.ClientProvider;
+import de.fraunhofer.isst.ids.framework.util.IDSUtils;
 import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 
@@ -18,9 +22,10 @@ import lombok.extern.slf4j.Slf4j;
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class ConfigurationContainer {
 
-    ConfigurationModel configurationModel;
+    volatile ConfigurationModel configurationModel;
     KeyStoreManager keyStoreManager;
     ClientProvider clientProvider;
+    volatile SelfDescription selfDescription;
 
     /**
      * Create a ConfigurationContainer with a ConfigurationModel and KeyStoreManager.
@@ -60,6 +65,54 @@ public class ConfigurationContainer {
         return this.configurationModel.getConnectorDescription();
     }
 
+    /**
+     * Getter for the serialized self-description (the {@link Connector} as JsonLD).
+     * It is serialized once per {@link ConfigurationModel} and reused until the configuration is updated.
+     *
+     * @return the self-description of the current configuration
+     * @throws IOException when the connector cannot be serialized
+     */
+    public String getSelfDescription() throws IOException {
+        return currentSelfDescription().json;
+    }
+
+    /**
+     * Getter for the serialized self-description as UTF-8 bytes, see {@link #getSelfDescription()}.
+     * The returned array is shared and must not be modified.
+     *
+     * @return the UTF-8 encoded self-description of the current configuration
+     * @throws IOException when the connector cannot be serialized
+     */
+    public byte[] getSelfDescriptionBytes() throws IOException {
+        return currentSelfDescription().bytes;
+    }
+
+    /**
+     * Get the cached self-description, serialize it if the cache belongs to another ConfigurationModel.
+     *
+     * @return the self-description of the current ConfigurationModel
+     * @throws IOException when the connector cannot be serialized
+     */
+    private SelfDescription currentSelfDescription() throws IOException {
+        final var model = this.configurationModel;
+        final var cached = this.selfDescription;
+        if (cached != null && cached.model == model) {
+            return cached;
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Serializing the self-description of the current configuration");
+        }
+
+        final var json = IDSUtils.buildSelfDeclaration(model);
+        final var serialized = new SelfDescription(model, json, json.getBytes(StandardCharsets.UTF_8));
+        //only cache it if the configuration was not updated in the meantime
+        if (this.configurationModel == model) {
+            this.selfDescription = serialized;
+        }
+        return serialized;
+    }
+
     /**
      * Getter for the {@link KeyStoreManager}.
      *
@@ -90,6 +143,7 @@ public class ConfigurationContainer {
 
             this.configurationModel = configurationModel;
             this.keyStoreManager = manager;
+            this.selfDescription = null;
             if (clientProvider != null) {
                 clientProvider.updateConfig();
                 log.debug("ClientProvider updated!");
@@ -125,4 +179,15 @@ public class ConfigurationContainer {
         final var alias = keyStoreManager.getKeyAlias();
         return new KeyStoreManager(configurationModel, keyPw, trustPw, alias);
     }
+
+    /**
+     * Serialized self-description of a ConfigurationModel.
+     */
+    @AllArgsConstructor
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    private static class SelfDescription {
+        ConfigurationModel model;
+        String json;
+        byte[] bytes;
+    }
 }
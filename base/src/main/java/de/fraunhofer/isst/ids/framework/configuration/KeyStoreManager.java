@@ -7,6 +7,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
@@ -20,6 +21,8 @@ import java.util.Date;
 import java.util.stream.IntStream;
 
 import de.fraunhofer.iais.eis.ConfigurationModel;
+import de.fraunhofer.isst.ids.framework.daps.DapsClientIdentity;
+import de.fraunhofer.isst.ids.framework.daps.MissingCertExtensionException;
 import de.fraunhofer.isst.ids.framework.util.IDSUtils;
 import lombok.AccessLevel;
 import lombok.Getter;
@@ -52,6 +55,9 @@ public class KeyStoreManager {
     Certificate cert;
     X509TrustManager trustManager;
 
+    @Getter(AccessLevel.NONE)
+    DapsClientIdentity dapsClientIdentity;
+
     /**
      * Build the KeyStoreManager from the given configuration.
      *
@@ -190,6 +196,22 @@ public class KeyStoreManager {
         return store;
     }
 
+    /**
+     * Getter for the {@link DapsClientIdentity} of the connector, built from the certificate and private key
+     * of this KeyStoreManager on first access.
+     *
+     * @return the identity used for requesting DATs at the DAPS
+     * @throws MissingCertExtensionException if the certificate has no AKI or SKI extension
+     * @throws GeneralSecurityException if the private key cannot be used for signing
+     */
+    public synchronized DapsClientIdentity getDapsClientIdentity()
+            throws MissingCertExtensionException, GeneralSecurityException {
+        if (dapsClientIdentity == null) {
+            dapsClientIdentity = DapsClientIdentity.of(this);
+        }
+        return dapsClientIdentity;
+    }
+
     /**
      * Getter for the expiration date of the Cert in the KeyStore.
      *
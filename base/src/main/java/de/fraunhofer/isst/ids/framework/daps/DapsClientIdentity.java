@@ -0,0 +1,148 @@
+package de.fraunhofer.isst.ids.framework.daps;
+
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.X509Certificate;
+
+import de.fraunhofer.isst.ids.framework.configuration.KeyStoreManager;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+
+/**
+ * The identity of the connector towards the DAPS: the connector UUID (built from the SKI and AKI of the connector
+ * certificate) and the private key used for signing DAT requests.
+ *
+ * It is built once per {@link KeyStoreManager}, so requesting a DAT does not have to decode the certificate
+ * extensions again.
+ */
+@Slf4j
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class DapsClientIdentity {
+
+    static String SIGNATURE_ALGORITHM = "SHA256withRSA";
+    static char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    @Getter
+    String connectorUUID;
+
+    @Getter
+    PrivateKey privateKey;
+
+    ThreadLocal<Signature> signatures;
+
+    /**
+     * Create the identity and check that the private key can be used for signing.
+     *
+     * @param connectorUUID the UUID of the connector (SKI:keyid:AKI)
+     * @param privateKey the private key of the connector
+     * @throws GeneralSecurityException if no signature can be initialized with the private key
+     */
+    private DapsClientIdentity(final String connectorUUID, final PrivateKey privateKey) throws GeneralSecurityException {
+        this.connectorUUID = connectorUUID;
+        this.privateKey = privateKey;
+
+        //fail early if the key cannot be used, Signature instances are not threadsafe and are kept per thread
+        final var initial = newSignature(privateKey);
+        this.signatures = ThreadLocal.withInitial(() -> {
+            try {
+                return newSignature(privateKey);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        this.signatures.set(initial);
+    }
+
+    /**
+     * Build the identity from the certificate and private key of the given {@link KeyStoreManager}.
+     *
+     * @param keyStoreManager the KeyStoreManager holding the connector certificate and private key
+     * @return the DapsClientIdentity of the connector
+     * @throws MissingCertExtensionException if the certificate has no AKI or SKI extension
+     * @throws GeneralSecurityException if no signature can be initialized with the private key
+     */
+    public static DapsClientIdentity of(final KeyStoreManager keyStoreManager)
+            throws MissingCertExtensionException, GeneralSecurityException {
+        final var cert = (X509Certificate) keyStoreManager.getCert();
+
+        //GET 2.5.29.14 SubjectKeyIdentifier / 2.5.29.35 AuthorityKeyIdentifier
+        if (log.isDebugEnabled()) {
+            log.debug("Get AKI from certificate");
+        }
+        final var rawAuthorityKeyIdentifier = cert.getExtensionValue(Extension.authorityKeyIdentifier.getId());
+        if (rawAuthorityKeyIdentifier == null) {
+            throw new MissingCertExtensionException("AKI of the Connector Certificate is null!");
+        }
+        final var akiOc = ASN1OctetString.getInstance(rawAuthorityKeyIdentifier);
+        final var authorityKeyIdentifier = AuthorityKeyIdentifier.getInstance(akiOc.getOctets()).getKeyIdentifier();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Get SKI from certificate");
+        }
+        final var rawSubjectKeyIdentifier = cert.getExtensionValue(Extension.subjectKeyIdentifier.getId());
+        if (rawSubjectKeyIdentifier == null) {
+            throw new MissingCertExtensionException("SKI of the Connector Certificate is null!");
+        }
+        final var skiOc = ASN1OctetString.getInstance(rawSubjectKeyIdentifier);
+        final var subjectKeyIdentifier = SubjectKeyIdentifier.getInstance(skiOc.getOctets()).getKeyIdentifier();
+
+        final var akiResult = toColonHex(authorityKeyIdentifier);
+        final var connectorUUID = toColonHex(subjectKeyIdentifier) + "keyid:" + akiResult.substring(0, akiResult.length() - 1);
+
+        if (log.isInfoEnabled()) {
+            log.info("ConnectorUUID: " + connectorUUID);
+        }
+
+        return new DapsClientIdentity(connectorUUID, keyStoreManager.getPrivateKey());
+    }
+
+    /**
+     * Sign the given data with the private key of the connector (SHA256withRSA, as used for RS256 JWTs).
+     *
+     * @param data the data to be signed
+     * @return the signature
+     * @throws SignatureException if the data cannot be signed
+     */
+    public byte[] sign(final byte[] data) throws SignatureException {
+        final var signature = signatures.get();
+        signature.update(data);
+        return signature.sign();
+    }
+
+    /**
+     * Create a Signature initialized for signing with the given key.
+     *
+     * @param privateKey the private key of the connector
+     * @return the initialized Signature
+     * @throws GeneralSecurityException if the algorithm is not available or the key is invalid
+     */
+    private static Signature newSignature(final PrivateKey privateKey) throws GeneralSecurityException {
+        final var signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+        signature.initSign(privateKey);
+        return signature;
+    }
+
+    /**
+     * Format bytes as uppercase hex pairs, each followed by a colon (XX:YY:ZZ:).
+     *
+     * @param bytes the bytes to format
+     * @return the formatted hex string
+     */
+    static String toColonHex(final byte[] bytes) {
+        final var chars = new char[bytes.length * 3];
+        for (var i = 0; i < bytes.length; i++) {
+            chars[i * 3] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[i * 3 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+            chars[i * 3 + 2] = ':';
+        }
+        return new String(chars);
+    }
+}
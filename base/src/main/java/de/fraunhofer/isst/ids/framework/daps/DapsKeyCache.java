@@ -0,0 +1,192 @@
+package de.fraunhofer.isst.ids.framework.daps;
+
+import java.io.IOException;
+import java.security.Key;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.fraunhofer.isst.ids.framework.util.ClientProvider;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Request;
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.lang.JoseException;
+
+/**
+ * Caches all keys of the DAPS JWKS, indexed by their kid.
+ *
+ * The key set is refreshed in background after the configured TTL. When a token references an unknown kid
+ * (e.g. after a key rotation of the DAPS), the key set is fetched again, but at most once per refetch interval.
+ * After a failed fetch, no new fetch is started until the failure backoff has passed.
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class DapsKeyCache {
+
+    final ClientProvider clientProvider;
+    final String keySetUrl;
+    final ScheduledExecutorService scheduler;
+    final Duration ttl;
+    final Duration refetchInterval;
+    final Duration failureBackoff;
+    final Map<String, Key> keys = new ConcurrentHashMap<>();
+    final ReentrantLock fetchLock = new ReentrantLock();
+
+    volatile Instant nextFetchAllowed = Instant.MIN;
+    ScheduledFuture<?> scheduledRefresh;
+
+    /**
+     * Create a DapsKeyCache.
+     *
+     * @param clientProvider the {@link ClientProvider} providing the HttpClient for fetching the key set
+     * @param keySetUrl URL of the DAPS JWKS
+     * @param scheduler the scheduler running the background refreshes
+     * @param ttl how long a fetched key set is used before it is refreshed
+     * @param refetchInterval minimal time between two fetches, when unknown kids are requested
+     * @param failureBackoff time after a failed fetch, in which no new fetch is started
+     */
+    public DapsKeyCache(final ClientProvider clientProvider,
+                        final String keySetUrl,
+                        final ScheduledExecutorService scheduler,
+                        final Duration ttl,
+                        final Duration refetchInterval,
+                        final Duration failureBackoff) {
+        this.clientProvider = clientProvider;
+        this.keySetUrl = keySetUrl;
+        this.scheduler = scheduler;
+        this.ttl = ttl;
+        this.refetchInterval = refetchInterval;
+        this.failureBackoff = failureBackoff;
+    }
+
+    /**
+     * Fetch the key set in background now and refresh it after every TTL.
+     */
+    public synchronized void start() {
+        if (scheduledRefresh == null) {
+            scheduledRefresh = scheduler.scheduleWithFixedDelay(this::refresh, 0, ttl.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop the background refresh.
+     */
+    public synchronized void stop() {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+            scheduledRefresh = null;
+        }
+    }
+
+    /**
+     * Get the key with the given kid. If it is unknown, the key set is fetched again (rate limited).
+     *
+     * @param kid the kid of the requested key
+     * @return the key or null if no key with this kid is known
+     */
+    public Key getKey(final String kid) {
+        final var key = keys.get(kid);
+        if (key != null || Instant.now().isBefore(nextFetchAllowed)) {
+            return key;
+        }
+
+        fetchLock.lock();
+        try {
+            //another thread may have fetched the key set while waiting for the lock
+            final var fetched = keys.get(kid);
+            if (fetched != null || Instant.now().isBefore(nextFetchAllowed)) {
+                return fetched;
+            }
+            if (log.isInfoEnabled()) {
+                log.info(String.format("Unknown kid %s, fetching key set from %s", kid, keySetUrl));
+            }
+            fetch();
+            return keys.get(kid);
+        } finally {
+            fetchLock.unlock();
+        }
+    }
+
+    /**
+     * Getter for all currently known keys.
+     *
+     * @return unmodifiable snapshot of the keys, indexed by kid
+     */
+    public Map<String, Key> getKeys() {
+        return Map.copyOf(keys);
+    }
+
+    /**
+     * Fetch the key set, used by the scheduled background refresh.
+     */
+    private void refresh() {
+        fetchLock.lock();
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Refreshing json web keyset from %s", keySetUrl));
+            }
+            fetch();
+        } finally {
+            fetchLock.unlock();
+        }
+    }
+
+    /**
+     * Fetch the key set from the DAPS and replace the cached keys. On failure, the cached keys are kept.
+     * Must be called while holding the fetchLock.
+     */
+    private void fetch() {
+        try {
+            final var request = new Request.Builder().url(keySetUrl).build();
+            final String keySetJSON;
+            try (var response = clientProvider.getClient().newCall(request).execute()) {
+                if (!response.isSuccessful() || response.body() == null) {
+                    throw new IOException("Unexpected code " + response);
+                }
+                keySetJSON = response.body().string();
+            }
+
+            //parse response as JsonWebKeySet
+            final var fetched = new HashMap<String, Key>();
+            for (final var jsonWebKey : new JsonWebKeySet(keySetJSON).getJsonWebKeys()) {
+                if (jsonWebKey.getKeyId() != null && jsonWebKey.getKey() != null) {
+                    fetched.put(jsonWebKey.getKeyId(), jsonWebKey.getKey());
+                }
+            }
+            keys.putAll(fetched);
+            keys.keySet().retainAll(fetched.keySet());
+            nextFetchAllowed = Instant.now().plus(refetchInterval);
+
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Fetched %d keys from %s", fetched.size(), keySetUrl));
+            }
+        } catch (IOException e) {
+            backOff();
+            if (log.isWarnEnabled()) {
+                log.warn(String.format("Could not get key from %s!", keySetUrl));
+                log.warn(e.getMessage(), e);
+            }
+        } catch (JoseException e) {
+            backOff();
+            if (log.isWarnEnabled()) {
+                log.warn("Could not create JsonWebKeySet from response!");
+                log.warn(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Remember a failed fetch, no new fetch is started for unknown kids until the failure backoff has passed.
+     */
+    private void backOff() {
+        nextFetchAllowed = Instant.now().plus(failureBackoff);
+    }
+}
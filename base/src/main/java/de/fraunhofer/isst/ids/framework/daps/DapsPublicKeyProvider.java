@@ -14,4 +14,15 @@ public interface DapsPublicKeyProvider {
      */
     Key providePublicKey();
 
+    /**
+     * Get the Public Key with the given kid from the JWKS of the DAPS.
+     * The default implementation ignores the kid and returns {@link #providePublicKey()}.
+     *
+     * @param keyId the kid from the header of a DAT
+     * @return the public Key of a DAPS Service with the given kid
+     */
+    default Key providePublicKey(final String keyId) {
+        return providePublicKey();
+    }
+
 }
@@ -0,0 +1,390 @@
+package de.fraunhofer.isst.ids.framework.daps;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Holds the current DAT of the connector and refreshes it on a background scheduler, some time before
+ * the token expires (read from the exp claim). As long as a valid token is held, callers get it without
+ * a request to the DAPS.
+ *
+ * At most one token request to the DAPS is in flight at a time, concurrent callers without a valid token
+ * share its result and wait for it at most for the configured time. If no token is available after that,
+ * the {@link FallbackPolicy} decides what is returned.
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class DapsTokenCache {
+
+    /**
+     * Tokens expiring within this margin are not handed out anymore.
+     */
+    static final Duration MIN_REMAINING_VALIDITY = Duration.ofSeconds(5);
+
+    /**
+     * Delay before retrying a failed background refresh.
+     */
+    static final Duration RETRY_DELAY = Duration.ofSeconds(10);
+
+    final Supplier<String> tokenSupplier;
+    final ScheduledExecutorService scheduler;
+    final Duration refreshBeforeExpiry;
+    final Duration maxWait;
+    final FallbackPolicy fallbackPolicy;
+    final AtomicReference<CachedToken> current = new AtomicReference<>();
+    final AtomicReference<CachedToken> lastAcquired = new AtomicReference<>();
+    final AtomicReference<CompletableFuture<String>> inFlight = new AtomicReference<>();
+    final AtomicLong generation = new AtomicLong();
+
+    final AtomicLong hits = new AtomicLong();
+    final AtomicLong misses = new AtomicLong();
+    final AtomicLong refreshes = new AtomicLong();
+    final AtomicLong totalRefreshNanos = new AtomicLong();
+    final AtomicLong lastRefreshNanos = new AtomicLong();
+
+    ScheduledFuture<?> scheduledRefresh;
+
+    /**
+     * Create a DapsTokenCache.
+     *
+     * @param tokenSupplier acquires a new DAT from the DAPS (e.g. using the {@link TokenManagerService})
+     * @param scheduler the scheduler running the background refreshes
+     * @param refreshBeforeExpiry how long before the expiration of the current token a new one is acquired
+     * @param maxWait how long callers wait for a token request to the DAPS before the fallback policy is applied
+     * @param fallbackPolicy what is returned if no token could be acquired in time
+     */
+    public DapsTokenCache(final Supplier<String> tokenSupplier,
+                          final ScheduledExecutorService scheduler,
+                          final Duration refreshBeforeExpiry,
+                          final Duration maxWait,
+                          final FallbackPolicy fallbackPolicy) {
+        this.tokenSupplier = tokenSupplier;
+        this.scheduler = scheduler;
+        this.refreshBeforeExpiry = refreshBeforeExpiry;
+        this.maxWait = maxWait;
+        this.fallbackPolicy = fallbackPolicy;
+    }
+
+    /**
+     * Get the current DAT, acquire a new one from the DAPS if no valid token is held.
+     *
+     * @return the DAT as compact JWT String
+     */
+    public String getToken() {
+        final var cached = current.get();
+        if (cached != null && cached.isValid(Instant.now())) {
+            hits.incrementAndGet();
+            return cached.getToken();
+        }
+
+        misses.incrementAndGet();
+        if (log.isDebugEnabled()) {
+            log.debug("No valid DAT cached, waiting for a new one.");
+        }
+
+        try {
+            final var token = acquire().get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+            if (!TokenManagerService.INVALID_TOKEN.equals(token)) {
+                return token;
+            }
+        } catch (TimeoutException e) {
+            if (log.isWarnEnabled()) {
+                log.warn(String.format("No DAT received from the DAPS within %s!", maxWait));
+            }
+        } catch (ExecutionException e) {
+            if (log.isWarnEnabled()) {
+                log.warn(String.format("Could not acquire DAT: %s", e.getCause().getMessage()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return fallback();
+    }
+
+    /**
+     * Drop the currently cached token, the next call to {@link #getToken()} will acquire a new one.
+     * A token request already in flight is not cached anymore when it completes (it may be for an old identity).
+     */
+    public synchronized void invalidate() {
+        generation.incrementAndGet();
+        inFlight.set(null);
+        current.set(null);
+        lastAcquired.set(null);
+        cancelScheduledRefresh();
+    }
+
+    /**
+     * Getter for the number of calls served from the cache.
+     *
+     * @return number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Getter for the number of calls that had to wait for a new token.
+     *
+     * @return number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Getter for the number of token requests sent to the DAPS (foreground and background).
+     *
+     * @return number of token refreshes
+     */
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    /**
+     * Getter for the duration of the last token request to the DAPS.
+     *
+     * @return latency of the last refresh
+     */
+    public Duration getLastRefreshLatency() {
+        return Duration.ofNanos(lastRefreshNanos.get());
+    }
+
+    /**
+     * Getter for the average duration of token requests to the DAPS.
+     *
+     * @return average refresh latency, zero if no refresh happened yet
+     */
+    public Duration getAverageRefreshLatency() {
+        final var count = refreshes.get();
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(totalRefreshNanos.get() / count);
+    }
+
+    /**
+     * Start a token request on the scheduler, or join the one that is already in flight.
+     *
+     * @return future completed with the newly acquired token
+     */
+    CompletableFuture<String> acquire() {
+        final var created = new CompletableFuture<String>();
+        final var running = inFlight.compareAndExchange(null, created);
+        if (running != null) {
+            return running;
+        }
+        try {
+            scheduler.execute(() -> runAcquisition(created));
+        } catch (RejectedExecutionException e) {
+            //scheduler was shut down, acquire on the calling thread
+            runAcquisition(created);
+        }
+        return created;
+    }
+
+    /**
+     * Run the token request and complete the given shared future with its result.
+     *
+     * @param future the future shared by all callers waiting for this token request
+     */
+    private void runAcquisition(final CompletableFuture<String> future) {
+        try {
+            future.complete(refresh());
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        } finally {
+            inFlight.compareAndSet(future, null);
+        }
+    }
+
+    /**
+     * Determine the token returned when no new token could be acquired, depending on the {@link FallbackPolicy}.
+     *
+     * @return the fallback token
+     */
+    private String fallback() {
+        final var last = lastAcquired.get();
+        if (fallbackPolicy == FallbackPolicy.LAST_TOKEN && last != null) {
+            if (log.isWarnEnabled()) {
+                log.warn("Using the last acquired DAT as fallback!");
+            }
+            return last.getToken();
+        }
+        return TokenManagerService.INVALID_TOKEN;
+    }
+
+    /**
+     * Acquire a new token, cache it if it is valid and schedule its background refresh.
+     *
+     * @return the newly acquired token (may be {@link TokenManagerService#INVALID_TOKEN})
+     */
+    String refresh() {
+        final var acquiredGeneration = generation.get();
+        final var start = System.nanoTime();
+        final var token = tokenSupplier.get();
+        final var latency = System.nanoTime() - start;
+        refreshes.incrementAndGet();
+        totalRefreshNanos.addAndGet(latency);
+        lastRefreshNanos.set(latency);
+
+        final var expiration = readExpiration(token);
+        if (expiration == null) {
+            if (log.isWarnEnabled()) {
+                log.warn("Acquired DAT has no readable exp claim, it will not be cached!");
+            }
+            return token;
+        }
+
+        synchronized (this) {
+            if (acquiredGeneration != generation.get()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Cache was invalidated while the DAT was acquired, it will not be cached!");
+                }
+                return token;
+            }
+
+            final var cached = new CachedToken(token, expiration);
+            current.set(cached);
+            lastAcquired.set(cached);
+            scheduleRefresh(expiration);
+        }
+        return token;
+    }
+
+    /**
+     * Schedule the background refresh of a token expiring at the given instant.
+     *
+     * @param expiration expiration of the current token
+     */
+    private void scheduleRefresh(final Instant expiration) {
+        final var now = Instant.now();
+        var refreshAt = expiration.minus(refreshBeforeExpiry);
+        if (!refreshAt.isAfter(now)) {
+            //token lifetime is shorter than the configured refresh time, refresh after half of its lifetime
+            refreshAt = now.plus(Duration.between(now, expiration).dividedBy(2));
+        }
+        schedule(Duration.between(now, refreshAt));
+    }
+
+    /**
+     * Schedule a background refresh after the given delay, replacing the currently scheduled one.
+     *
+     * @param delay the delay of the refresh
+     */
+    private synchronized void schedule(final Duration delay) {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Scheduling DAT refresh in %s", delay));
+        }
+        scheduledRefresh = scheduler.schedule(this::backgroundRefresh, Math.max(delay.toMillis(), 0), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancel the currently scheduled background refresh.
+     */
+    private synchronized void cancelScheduledRefresh() {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+            scheduledRefresh = null;
+        }
+    }
+
+    /**
+     * Refresh the token from the scheduler thread, retry later if the DAPS did not return a usable token.
+     */
+    private void backgroundRefresh() {
+        if (log.isDebugEnabled()) {
+            log.debug("Refreshing DAT in background");
+        }
+        acquire().whenComplete((token, error) -> {
+            if (error != null || readExpiration(token) == null) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Background refresh of the DAT failed, retrying later!");
+                }
+                schedule(RETRY_DELAY);
+            }
+        });
+    }
+
+    /**
+     * Read the exp claim of a JWT without verifying its signature.
+     *
+     * @param token a compact JWT
+     * @return the expiration of the token or null if the token is invalid or has no exp claim
+     */
+    static Instant readExpiration(final String token) {
+        if (token == null || TokenManagerService.INVALID_TOKEN.equals(token)) {
+            return null;
+        }
+        final var firstDot = token.indexOf('.');
+        final var secondDot = token.indexOf('.', firstDot + 1);
+        if (firstDot < 0 || secondDot < 0) {
+            return null;
+        }
+        try {
+            final var payload = Base64.getUrlDecoder().decode(token.substring(firstDot + 1, secondDot));
+            final var exp = new JSONObject(new String(payload, StandardCharsets.UTF_8)).optLong("exp", -1);
+            return exp < 0 ? null : Instant.ofEpochSecond(exp);
+        } catch (IllegalArgumentException | JSONException e) {
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Could not read exp claim of token: %s", e.getMessage()));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A token together with its expiration.
+     */
+    @Getter
+    @AllArgsConstructor
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    static class CachedToken {
+        String token;
+        Instant expiration;
+
+        /**
+         * @param now the current time
+         * @return true if the token is still valid for at least {@link #MIN_REMAINING_VALIDITY}
+         */
+        boolean isValid(final Instant now) {
+            return now.plus(MIN_REMAINING_VALIDITY).isBefore(expiration);
+        }
+    }
+
+    /**
+     * Defines what is returned to callers, if no token could be acquired from the DAPS in time.
+     */
+    public enum FallbackPolicy {
+        /**
+         * Return {@link TokenManagerService#INVALID_TOKEN} (like an uncached token request would).
+         */
+        INVALID_TOKEN,
+        /**
+         * Return the last token acquired from the DAPS, even if it is expired (INVALID_TOKEN if there is none).
+         */
+        LAST_TOKEN
+    }
+}
@@ -2,7 +2,12 @@ package de.fraunhofer.isst.ids.framework.daps;
 
 import java.io.IOException;
 import java.security.Key;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import de.fraunhofer.iais.eis.Message;
 import de.fraunhofer.iais.eis.RejectionMessageImpl;
@@ -15,21 +20,105 @@ import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.fileupload.FileUploadException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
  * The DapsValidator checks the DAPS Token of a RequestMessage using a public signingKey.
+ * Signatures are verified with prebuilt parsers per DAPS key (see {@link DatValidationEngine}), claims of tokens
+ * with a verified signature are cached (see {@link VerifiedDatCache}), so repeatedly used tokens are not verified again.
  */
 @Slf4j
 @Service
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class DapsValidator {
 
-    DapsPublicKeyProvider keyProvider;
+    static final long DEFAULT_CACHE_TTL_SECONDS = 300;
+    static final int DEFAULT_CACHE_SIZE = 1000;
+    static final long DEFAULT_LEEWAY_SECONDS = 0;
+    static final String[] DEFAULT_ALGORITHMS = {"RS256", "RS384", "RS512"};
+
+    DatValidationEngine validationEngine;
+    VerifiedDatCache verifiedDatCache;
+    long leewaySeconds;
+    List<DapsVerificationRule> verificationRules = new CopyOnWriteArrayList<>();
     Serializer serializer = new Serializer();
 
+    /**
+     * Create a DapsValidator with the default cache settings.
+     *
+     * @param keyProvider the provider of the DAPS keys
+     */
     public DapsValidator(final DapsPublicKeyProvider keyProvider) {
-        this.keyProvider = keyProvider;
+        this(keyProvider, DEFAULT_CACHE_TTL_SECONDS, DEFAULT_CACHE_SIZE, DEFAULT_LEEWAY_SECONDS, DEFAULT_ALGORITHMS);
+    }
+
+    /**
+     * Create a DapsValidator.
+     *
+     * @param keyProvider the provider of the DAPS keys
+     * @param cacheTtlSeconds maximum time in seconds the claims of a verified token are cached
+     * @param cacheSize maximum number of cached tokens, 0 disables the cache
+     * @param leewaySeconds allowed clock skew in seconds when checking the time claims of a token
+     * @param algorithms the signature algorithms accepted for DATs
+     */
+    @Autowired
+    public DapsValidator(final DapsPublicKeyProvider keyProvider,
+                         @Value("${daps.validation.cache.ttl.seconds:300}") final long cacheTtlSeconds,
+                         @Value("${daps.validation.cache.size:1000}") final int cacheSize,
+                         @Value("${daps.validation.leeway.seconds:0}") final long leewaySeconds,
+                         @Value("${daps.validation.algorithms:RS256,RS384,RS512}") final String[] algorithms) {
+        this.validationEngine = new DatValidationEngine(keyProvider, new HashSet<>(Arrays.asList(algorithms)), leewaySeconds);
+        this.verifiedDatCache = new VerifiedDatCache(Duration.ofSeconds(cacheTtlSeconds), cacheSize);
+        this.leewaySeconds = leewaySeconds;
+    }
+
+    /**
+     * Register an additional rule, which must be satisfied by the claims of every DAT checked by this validator.
+     *
+     * @param rule the {@link DapsVerificationRule} to add (e.g. {@link DapsVerificationRule#audience(String)})
+     */
+    public void registerVerificationRule(final DapsVerificationRule rule) {
+        this.verificationRules.add(rule);
+    }
+
+    /**
+     * Check the time claims of a DAT with the configured leeway and apply the registered verification rules.
+     *
+     * @param claims the claims of a DAT with verified signature
+     * @return true if the claims are valid
+     * @throws ClaimsException when the claims of the DAT cannot be verified
+     */
+    public boolean verifyClaims(final Jws<Claims> claims) throws ClaimsException {
+        return DapsVerifier.verify(claims, leewaySeconds, verificationRules);
+    }
+
+    /**
+     * Getter for the cache of verified tokens, exposing hit and miss counters.
+     *
+     * @return the cache of verified tokens
+     */
+    public VerifiedDatCache getVerifiedDatCache() {
+        return verifiedDatCache;
+    }
+
+    /**
+     * Extract the Claims from the Dat token of a message, using the cached result if the token was verified before.
+     *
+     * @param message an incoming RequestMessage
+     * @return the Claims of the messages DAT Token, when it can be signed with the key referenced by its kid
+     * @throws ClaimsException if Token cannot be signed with the referenced key
+     */
+    public Jws<Claims> getClaims(final Message message) throws ClaimsException {
+        final var tokenValue = message.getSecurityToken().getTokenValue();
+        final var cached = verifiedDatCache.get(tokenValue);
+        if (cached != null) {
+            return cached;
+        }
+        final var claims = validationEngine.parse(tokenValue);
+        verifiedDatCache.put(tokenValue, claims);
+        return claims;
     }
 
     /**
@@ -72,7 +161,7 @@ public class DapsValidator {
 
         Jws<Claims> claims;
         try {
-            claims = getClaims(message, keyProvider.providePublicKey());
+            claims = getClaims(message);
         } catch (ClaimsException e) {
             if (log.isWarnEnabled()) {
                 log.warn("Daps token of response could not be pased!");
@@ -80,7 +169,7 @@ public class DapsValidator {
             return false;
         }
         try {
-            return DapsVerifier.verify(claims);
+            return verifyClaims(claims);
         } catch (ClaimsException e) {
             if (log.isWarnEnabled()) {
                 log.warn("Claims could not be verified!");
@@ -0,0 +1,57 @@
+package de.fraunhofer.isst.ids.framework.daps;
+
+import java.util.Collection;
+
+import io.jsonwebtoken.Claims;
+
+/**
+ * An additional check of the claims of a DAT, applied by the {@link DapsVerifier} after the time claims were checked.
+ */
+@FunctionalInterface
+public interface DapsVerificationRule {
+
+    /**
+     * Check the claims of a DAT.
+     *
+     * @param claims the claims of the DAT (signature already verified)
+     * @return true if the claims satisfy this rule
+     * @throws ClaimsException if the claims cannot be checked
+     */
+    boolean verify(Claims claims) throws ClaimsException;
+
+    /**
+     * Rule checking that the aud claim (a single value or a list) contains the given audience.
+     *
+     * @param audience the expected audience (e.g. idsc:IDS_CONNECTORS_ALL)
+     * @return the audience rule
+     */
+    static DapsVerificationRule audience(final String audience) {
+        return claims -> {
+            final var aud = claims.get(Claims.AUDIENCE);
+            if (aud instanceof Collection) {
+                return ((Collection<?>) aud).stream().anyMatch(value -> audience.equals(String.valueOf(value)));
+            }
+            return aud != null && audience.equals(aud.toString());
+        };
+    }
+
+    /**
+     * Rule checking the securityProfile claim of the DAT.
+     *
+     * @param securityProfile the expected security profile (e.g. idsc:BASE_SECURITY_PROFILE)
+     * @return the securityProfile rule
+     */
+    static DapsVerificationRule securityProfile(final String securityProfile) {
+        return claims -> securityProfile.equals(claims.get("securityProfile", String.class));
+    }
+
+    /**
+     * Rule checking the referringConnector claim of the DAT.
+     *
+     * @param referringConnector the expected connector URI
+     * @return the referringConnector rule
+     */
+    static DapsVerificationRule referringConnector(final String referringConnector) {
+        return claims -> referringConnector.equals(claims.get("referringConnector", String.class));
+    }
+}
@@ -1,7 +1,6 @@
 package de.fraunhofer.isst.ids.framework.daps;
 
-import java.time.LocalDateTime;
-import java.time.ZoneId;
+import java.util.List;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
@@ -23,17 +22,70 @@ public class DapsVerifier {
      * @throws ClaimsException when the claims of the DAT cannot be verified
      */
     public static boolean verify(final Jws<Claims> toVerify) throws ClaimsException {
+        return verify(toVerify, 0, List.of());
+    }
+
+    /**
+     * Check notbefore, expiration and issuedat of the DAT Token Claims with the given leeway,
+     * then apply the additional rules.
+     *
+     * The clock is read once, all time claims are compared as epoch seconds.
+     * @param toVerify the claims to verify
+     * @param leewaySeconds allowed clock skew in seconds
+     * @param rules additional rules, all of them must be satisfied
+     * @return true if message is valid
+     * @throws ClaimsException when the claims of the DAT cannot be verified
+     */
+    public static boolean verify(final Jws<Claims> toVerify,
+                                 final long leewaySeconds,
+                                 final List<DapsVerificationRule> rules) throws ClaimsException {
+        final Claims body;
+        final long now;
+        final long notBefore;
+        final long expiration;
+        final Long issuedAt;
         try {
-            final Claims body = toVerify.getBody();
-            return (LocalDateTime.now().toLocalDate().isAfter(body.getNotBefore().toInstant().atZone(ZoneId.systemDefault()).toLocalDate()) ||
-                   LocalDateTime.now().toLocalDate().isEqual(body.getNotBefore().toInstant().atZone(ZoneId.systemDefault()).toLocalDate())) &&
-                   (LocalDateTime.now().toLocalDate().isBefore(body.getExpiration().toInstant().atZone(ZoneId.systemDefault()).toLocalDate()) ||
-                   LocalDateTime.now().toLocalDate().isEqual(body.getExpiration().toInstant().atZone(ZoneId.systemDefault()).toLocalDate()));
+            body = toVerify.getBody();
+            now = System.currentTimeMillis() / 1000;
+            notBefore = epochSeconds(body, Claims.NOT_BEFORE);
+            expiration = epochSeconds(body, Claims.EXPIRATION);
+            issuedAt = body.containsKey(Claims.ISSUED_AT) ? epochSeconds(body, Claims.ISSUED_AT) : null;
         } catch (Exception e) {
             if (log.isWarnEnabled()) {
                 log.warn("Could not verify Claims of the DAT Token!");
             }
             throw new ClaimsException(e.getMessage());
         }
+
+        if (now + leewaySeconds < notBefore || now - leewaySeconds >= expiration
+                || issuedAt != null && now + leewaySeconds < issuedAt) {
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("DAT not valid at %d (nbf: %d, exp: %d, iat: %s)", now, notBefore, expiration, issuedAt));
+            }
+            return false;
+        }
+
+        for (final var rule : rules) {
+            if (!rule.verify(body)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read a NumericDate claim without converting it to a Date.
+     *
+     * @param body the claims of the DAT
+     * @param claim name of the claim
+     * @return the claim value in epoch seconds
+     * @throws ClaimsException if the claim is missing or not a number
+     */
+    private static long epochSeconds(final Claims body, final String claim) throws ClaimsException {
+        final var value = body.get(claim);
+        if (!(value instanceof Number)) {
+            throw new ClaimsException(String.format("Claim %s is missing or not a NumericDate!", claim));
+        }
+        return ((Number) value).longValue();
     }
 }
@@ -0,0 +1,143 @@
+package de.fraunhofer.isst.ids.framework.daps;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Verifies the signature of DATs with prebuilt parsers, one per signing key of the DAPS.
+ *
+ * The header of a token is decoded once to read kid and alg, tokens with an algorithm that is not allowed are rejected
+ * before the signature is checked. A configured parser is not modified while parsing, so it is shared between
+ * threads. When the key provider returns a different key for a kid (key rotation), a new parser is built and
+ * replaces the old one.
+ */
+@Slf4j
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class DatValidationEngine {
+
+    /**
+     * Map key used for tokens without kid in their header.
+     */
+    static String NO_KID = "";
+
+    DapsPublicKeyProvider keyProvider;
+    Set<String> allowedAlgorithms;
+    long allowedClockSkewSeconds;
+    Map<String, KeyParser> parsers = new ConcurrentHashMap<>();
+
+    /**
+     * Create a DatValidationEngine.
+     *
+     * @param keyProvider the provider of the DAPS keys
+     * @param allowedAlgorithms the signature algorithms accepted for DATs (e.g. RS256)
+     * @param allowedClockSkewSeconds allowed clock skew in seconds when checking exp and nbf
+     */
+    public DatValidationEngine(final DapsPublicKeyProvider keyProvider,
+                               final Set<String> allowedAlgorithms,
+                               final long allowedClockSkewSeconds) {
+        this.keyProvider = keyProvider;
+        this.allowedAlgorithms = Set.copyOf(allowedAlgorithms);
+        this.allowedClockSkewSeconds = allowedClockSkewSeconds;
+    }
+
+    /**
+     * Verify the signature of a DAT and return its claims.
+     *
+     * @param token the compact DAT
+     * @return the Claims of the DAT, when it can be signed with the key referenced by its kid
+     * @throws ClaimsException if the token is malformed, uses an algorithm that is not allowed, no key is known for
+     * its kid or the signature is invalid
+     */
+    public Jws<Claims> parse(final String token) throws ClaimsException {
+        final var header = readHeader(token);
+        final var alg = header.optString("alg", null);
+        if (alg == null || !allowedAlgorithms.contains(alg)) {
+            throw new ClaimsException(String.format("Signature algorithm %s of the DAT is not allowed!", alg));
+        }
+
+        final var kid = header.optString("kid", null);
+        try {
+            return parserFor(kid).parseClaimsJws(token);
+        } catch (Exception e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Could not parse incoming JWT/DAT!");
+            }
+            throw new ClaimsException(e.getMessage());
+        }
+    }
+
+    /**
+     * Get the parser for the key with the given kid, build a new one if the key is new or changed.
+     *
+     * @param kid the kid from the token header (may be null)
+     * @return the parser verifying signatures with the current key of the kid
+     * @throws ClaimsException if no key is known for the kid
+     */
+    private JwtParser parserFor(final String kid) throws ClaimsException {
+        final var key = keyProvider.providePublicKey(kid);
+        if (key == null) {
+            throw new ClaimsException(String.format("No DAPS key known for kid %s!", kid));
+        }
+        final var mapKey = kid == null ? NO_KID : kid;
+        final var current = parsers.get(mapKey);
+        if (current != null && current.getKey() == key) {
+            return current.getParser();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Building JWT parser for kid %s", kid));
+        }
+        final var parser = Jwts.parser()
+                .setSigningKey(key)
+                .setAllowedClockSkewSeconds(allowedClockSkewSeconds);
+        parsers.put(mapKey, new KeyParser(key, parser));
+        return parser;
+    }
+
+    /**
+     * Decode the JOSE header of a compact JWT.
+     *
+     * @param token the compact JWT
+     * @return the header as JSONObject
+     * @throws ClaimsException if the header cannot be decoded
+     */
+    static JSONObject readHeader(final String token) throws ClaimsException {
+        final var firstDot = token == null ? -1 : token.indexOf('.');
+        if (firstDot < 0) {
+            throw new ClaimsException("DAT is not a compact JWT!");
+        }
+        try {
+            final var header = Base64.getUrlDecoder().decode(token.substring(0, firstDot));
+            return new JSONObject(new String(header, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException | JSONException e) {
+            throw new ClaimsException("Header of the DAT cannot be decoded: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A signing key together with the parser verifying signatures with it.
+     */
+    @Getter
+    @AllArgsConstructor
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    static class KeyParser {
+        Key key;
+        JwtParser parser;
+    }
+}
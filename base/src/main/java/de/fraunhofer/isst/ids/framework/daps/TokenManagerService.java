@@ -1,28 +1,20 @@
 package de.fraunhofer.isst.ids.framework.daps;
 
 import java.io.IOException;
-import java.security.cert.X509Certificate;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SignatureException;
 import java.time.Instant;
-import java.util.Arrays;
-import java.util.Date;
-import java.util.stream.Collectors;
+import java.util.Base64;
 
 import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
 import de.fraunhofer.isst.ids.framework.util.ClientProvider;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.FormBody;
 import okhttp3.Request;
-import org.bouncycastle.asn1.ASN1OctetString;
-import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
-import org.bouncycastle.asn1.x509.Extension;
-import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
 import org.json.JSONObject;
 
-import static org.apache.commons.codec.binary.Hex.encodeHexString;
-
 /**
  * Manages Dynamic Attribute Tokens.
  *
@@ -31,6 +23,20 @@ import static org.apache.commons.codec.binary.Hex.encodeHexString;
 @Slf4j
 @UtilityClass
 public class TokenManagerService {
+
+    /**
+     * Token value returned when no DAT could be acquired.
+     */
+    public static final String INVALID_TOKEN = "INVALID_TOKEN";
+
+    static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+
+    /**
+     * Base64url encoded JWS header of DAT requests (signed with RS256).
+     */
+    static final String ENCODED_JWS_HEADER =
+            BASE64_URL.encodeToString("{\"alg\":\"RS256\"}".getBytes(StandardCharsets.UTF_8));
+
     /**
      * Get the DAT from the DAPS at dapsURL using the current configuration.
      *
@@ -43,7 +49,7 @@ public class TokenManagerService {
                                       final ClientProvider provider,
                                       final String dapsUrl) {
 
-        var dynamicAttributeToken = "INVALID_TOKEN";
+        var dynamicAttributeToken = INVALID_TOKEN;
 
         final var keyStoreManager = container.getKeyManager();
         final var targetAudience = "idsc:IDS_CONNECTORS_ALL";
@@ -52,70 +58,21 @@ public class TokenManagerService {
         // Try clause for setup phase (loading keys, building trust manager)
         try {
 
-            // get private key
-            log.debug("Getting PrivateKey and Certificate from KeyStoreManager");
-            final var privKey = keyStoreManager.getPrivateKey();
-
-            // Get certificate of public key
-            final var cert = (X509Certificate) keyStoreManager.getCert();
-
-            // Get AKI
-            //GET 2.5.29.14 SubjectKeyIdentifier / 2.5.29.35 AuthorityKeyIdentifier
-            log.debug("Get AKI from certificate");
-            final var authorityKeyIdentifierId = Extension.authorityKeyIdentifier.getId();
-            final var rawAuthorityKeyIdentifier = cert.getExtensionValue(authorityKeyIdentifierId);
-            if (rawAuthorityKeyIdentifier == null) {
-                throw new MissingCertExtensionException("AKI of the Connector Certificate is null!");
-            }
-            final var akiOc = ASN1OctetString.getInstance(rawAuthorityKeyIdentifier);
-            final var aki = AuthorityKeyIdentifier.getInstance(akiOc.getOctets());
-            final var authorityKeyIdentifier = aki.getKeyIdentifier();
-
-            //GET SKI
-            log.debug("Get SKI from certificate");
-            final var subjectKeyIdentifierId = Extension.subjectKeyIdentifier.getId();
-            final var rawSubjectKeyIdentifier = cert.getExtensionValue(subjectKeyIdentifierId);
-
-            if (rawSubjectKeyIdentifier == null) {
-                throw new MissingCertExtensionException("SKI of the Connector Certificate is null!");
-            }
-
-            final var ski0c = ASN1OctetString.getInstance(rawSubjectKeyIdentifier);
-            final var ski = SubjectKeyIdentifier.getInstance(ski0c.getOctets());
-            final var subjectKeyIdentifier = ski.getKeyIdentifier();
-            final var akiResult = beautifyHex(encodeHexString(authorityKeyIdentifier).toUpperCase());
-            final var skiResult = beautifyHex(encodeHexString(subjectKeyIdentifier).toUpperCase());
-
-            final var connectorUUID = skiResult + "keyid:" + akiResult.substring(0, akiResult.length() - 1);
+            // get the connector identity (UUID and signing key), built once per KeyStoreManager
+            log.debug("Getting DapsClientIdentity from KeyStoreManager");
+            final var identity = keyStoreManager.getDapsClientIdentity();
 
             if (log.isInfoEnabled()) {
-                log.info("ConnectorUUID: " + connectorUUID);
                 log.info("Retrieving Dynamic Attribute Token...");
             }
 
             // create signed JWT (JWS)
             // Create expiry date one day (86400 seconds) from now
             if (log.isDebugEnabled()) {
-                log.debug("Building jwt token");
-            }
-
-            final var expiryDate = Date.from(Instant.now().plusSeconds(86_400));
-            final var jwtb =
-                    Jwts.builder()
-                            .setIssuer(connectorUUID)
-                            .setSubject(connectorUUID)
-                            .claim("@context", "https://w3id.org/idsa/contexts/context.jsonld")
-                            .claim("@type", "ids:DatRequestToken")
-                            .setExpiration(expiryDate)
-                            .setIssuedAt(Date.from(Instant.now().minusSeconds(10)))
-                            .setAudience(targetAudience)
-                            .setNotBefore(Date.from(Instant.now().minusSeconds(10)));
-
-            if (log.isDebugEnabled()) {
-                log.debug("Signing jwt token");
+                log.debug("Building and signing jwt token");
             }
 
-            final var jws = jwtb.signWith(SignatureAlgorithm.RS256, privKey).compact();
+            final var jws = buildClientAssertion(identity, targetAudience);
 
             if (log.isInfoEnabled()) {
                 log.info("Request token: " + jws);
@@ -182,6 +139,10 @@ public class TokenManagerService {
             if (log.isErrorEnabled()) {
                 log.error("Certificate of the Connector is missing aki/ski extensions!");
             }
+        } catch (GeneralSecurityException e) {
+            if (log.isErrorEnabled()) {
+                log.error(String.format("Could not sign the DAT request: %s", e.getMessage()));
+            }
         }
         return dynamicAttributeToken;
     }
@@ -207,16 +168,31 @@ public class TokenManagerService {
         return completeDapsUrl;
     }
 
-    /***
-     * Beautyfies Hex strings and will generate a result later used to create the client id (XX:YY:ZZ).
+    /**
+     * Build the signed client assertion (DatRequestToken) sent to the DAPS, valid for one day.
      *
-     * @param hexString HexString to be beautified
-     * @return beautifiedHex result
+     * @param identity the identity of the connector
+     * @param targetAudience the audience of the requested token
+     * @return the signed client assertion as compact JWS
+     * @throws SignatureException if the assertion cannot be signed
      */
-    private static String beautifyHex(final String hexString) {
-        return Arrays.stream(split(hexString, 2))
-                .map(s -> s + ":")
-                .collect(Collectors.joining());
+    private static String buildClientAssertion(final DapsClientIdentity identity, final String targetAudience)
+            throws SignatureException {
+        final var now = Instant.now().getEpochSecond();
+        final var claims = new JSONObject()
+                .put("iss", identity.getConnectorUUID())
+                .put("sub", identity.getConnectorUUID())
+                .put("@context", "https://w3id.org/idsa/contexts/context.jsonld")
+                .put("@type", "ids:DatRequestToken")
+                .put("exp", now + 86_400)
+                .put("iat", now - 10)
+                .put("aud", targetAudience)
+                .put("nbf", now - 10);
+
+        final var signingInput = ENCODED_JWS_HEADER + '.'
+                + BASE64_URL.encodeToString(claims.toString().getBytes(StandardCharsets.UTF_8));
+        final var signature = identity.sign(signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + '.' + BASE64_URL.encodeToString(signature);
     }
 
     /***
@@ -1,27 +1,29 @@
 package de.fraunhofer.isst.ids.framework.daps;
 
-import java.io.IOException;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.security.Key;
-import java.util.Objects;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import de.fraunhofer.iais.eis.DynamicAttributeToken;
 import de.fraunhofer.iais.eis.DynamicAttributeTokenBuilder;
 import de.fraunhofer.iais.eis.TokenFormat;
 import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import de.fraunhofer.isst.ids.framework.configuration.KeyStoreManager;
 import de.fraunhofer.isst.ids.framework.util.ClientProvider;
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
-import okhttp3.Request;
-import org.jose4j.jwk.JsonWebKeySet;
-import org.jose4j.lang.JoseException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /**
  * Get Daps Tokens and Daps Public Key from specified URLs.
- * Spring Component Wrapper for TokenManagerService
+ * Spring Component Wrapper for TokenManagerService, caching the acquired DAT until shortly before it expires
+ * and the keys of the DAPS JWKS (see {@link DapsKeyCache}).
  */
 @Slf4j
 @Service
@@ -30,7 +32,10 @@ public class TokenProvider implements DapsTokenProvider, DapsPublicKeyProvider {
 
     ConfigurationContainer configurationContainer;
     ClientProvider clientProvider;
-    Key publicKey;
+    ScheduledExecutorService scheduler;
+    DapsTokenCache tokenCache;
+    DapsKeyCache keyCache;
+    volatile KeyStoreManager tokenKeyManager;
 
     @Value("${daps.key.url}")
     String dapsKeyUrl;
@@ -41,6 +46,24 @@ public class TokenProvider implements DapsTokenProvider, DapsPublicKeyProvider {
     @Value("${daps.kid.url:default}")
     String keyKid;
 
+    @Value("${daps.token.refresh.seconds:60}")
+    long tokenRefreshSeconds;
+
+    @Value("${daps.token.wait.seconds:30}")
+    long tokenWaitSeconds;
+
+    @Value("${daps.token.fallback:INVALID_TOKEN}")
+    DapsTokenCache.FallbackPolicy tokenFallbackPolicy;
+
+    @Value("${daps.key.cache.ttl.seconds:3600}")
+    long keyCacheTtlSeconds;
+
+    @Value("${daps.key.refetch.interval.seconds:30}")
+    long keyRefetchIntervalSeconds;
+
+    @Value("${daps.key.failure.backoff.seconds:60}")
+    long keyFailureBackoffSeconds;
+
     /**
      *
      *
@@ -54,10 +77,62 @@ public class TokenProvider implements DapsTokenProvider, DapsPublicKeyProvider {
         this.clientProvider = clientProvider;
     }
 
+    /**
+     * Create the scheduler, the {@link DapsTokenCache} for refreshing the DAT and the {@link DapsKeyCache}
+     * for refreshing the DAPS keys in background.
+     */
+    @PostConstruct
+    public void init() {
+        this.scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+            final var thread = new Thread(runnable, "daps-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.tokenCache = new DapsTokenCache(
+                () -> TokenManagerService.acquireToken(configurationContainer, clientProvider, dapsUrl),
+                scheduler,
+                Duration.ofSeconds(tokenRefreshSeconds),
+                Duration.ofSeconds(tokenWaitSeconds),
+                tokenFallbackPolicy);
+        this.keyCache = new DapsKeyCache(
+                clientProvider,
+                dapsKeyUrl,
+                scheduler,
+                Duration.ofSeconds(keyCacheTtlSeconds),
+                Duration.ofSeconds(keyRefetchIntervalSeconds),
+                Duration.ofSeconds(keyFailureBackoffSeconds));
+        this.keyCache.start();
+    }
+
+    /**
+     * Stop background refreshes of the DAT and the DAPS keys.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (keyCache != null) {
+            keyCache.stop();
+        }
+        if (tokenCache != null) {
+            tokenCache.invalidate();
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Getter for the {@link DapsTokenCache}, exposing hit, miss and refresh latency counters.
+     *
+     * @return the cache holding the current DAT
+     */
+    public DapsTokenCache getTokenCache() {
+        return tokenCache;
+    }
+
     /**
      * Return the DAT as a Infomodel {@link DynamicAttributeToken}.
      *
-     * @return acquire a new DAPS Token and return it as a {@link DynamicAttributeToken}
+     * @return the current DAPS Token as a {@link DynamicAttributeToken}
      */
     @Override
     public DynamicAttributeToken getDAT() {
@@ -70,70 +145,65 @@ public class TokenProvider implements DapsTokenProvider, DapsPublicKeyProvider {
     /**
      * Return the DAT as JWT String.
      *
-     * @return acquire a new DAPS Token and return the JWT String value
+     * @return the cached DAPS Token (a new one is acquired if none is cached or it expired) as JWT String value
      */
     @Override
     public String provideDapsToken() {
-        if (log.isDebugEnabled()) {
-            log.debug(String.format("Get a new DAT Token from %s", dapsUrl));
+        if (tokenCache == null) {
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Get a new DAT Token from %s", dapsUrl));
+            }
+            return TokenManagerService.acquireToken(configurationContainer, clientProvider, dapsUrl);
+        }
+
+        //the connector identity changes with the KeyStoreManager, tokens of the old identity are dropped
+        final var keyManager = configurationContainer.getKeyManager();
+        if (keyManager != tokenKeyManager) {
+            tokenCache.invalidate();
+            tokenKeyManager = keyManager;
         }
-        return TokenManagerService.acquireToken(configurationContainer, clientProvider, dapsUrl);
+        return tokenCache.getToken();
     }
 
     /**
      * Return the Public Key from the DAPS JWKS.
      *
-     * @return the Public Key from the DAPS (used for validating Tokens of incoming Messages)
+     * @return the Public Key from the DAPS with the configured kid (used for validating Tokens of incoming Messages)
      */
     @Override
     public Key providePublicKey() {
-        if (publicKey == null) {
-            if (log.isDebugEnabled()) {
-                log.debug(String.format("Getting public key from %s!", dapsKeyUrl));
-            }
-            getPublicKey();
-        }
-        if (log.isDebugEnabled()) {
-            log.debug("Provide public key!");
-        }
-        return publicKey;
+        return providePublicKey(keyKid);
     }
 
     /**
-     * Pull the Public Key from the DAPS and save it in the publicKey variable.
+     * Return the Public Key with the given kid from the DAPS JWKS.
+     *
+     * @param keyId the kid from the header of a DAT
+     * @return the Public Key from the DAPS with the given kid, null if the DAPS does not know the kid
      */
-    private void getPublicKey() {
-        try {
-            //request the jwks
-            if (log.isDebugEnabled()) {
-                log.debug(String.format("Getting json web keyset from %s", dapsKeyUrl));
-            }
-
-            final var client = clientProvider.getClient();
-            final var request = new Request.Builder().url(dapsKeyUrl).build();
-            final var response = client.newCall(request).execute();
-            final var keySetJSON = Objects.requireNonNull(response.body()).string();
-
-            //parse response as JsonWebKeySet
-            final var jsonWebKeySet = new JsonWebKeySet(keySetJSON);
-            final var key = jsonWebKeySet.getJsonWebKeys().stream().filter(k -> k.getKeyId().equals(keyKid)).findAny().orElse(null);
-            if (key != null) {
-                this.publicKey = key.getKey();
-            } else {
-                if (log.isWarnEnabled()) {
-                    log.warn(String.format("Could not get JsonWebKey with kid %s from received KeySet! PublicKey is null!", keyKid));
-                }
-            }
-        } catch (IOException e) {
-            if (log.isWarnEnabled()) {
-                log.warn(String.format("Could not get key from %s!", dapsKeyUrl));
-                log.warn(e.getMessage(), e);
-            }
-        } catch (JoseException e) {
+    @Override
+    public Key providePublicKey(final String keyId) {
+        final var kid = keyId == null ? keyKid : keyId;
+        if (keyCache == null) {
+            return null;
+        }
+        final var key = keyCache.getKey(kid);
+        if (key == null) {
             if (log.isWarnEnabled()) {
-                log.warn("Could not create JsonWebKeySet from response!");
-                log.warn(e.getMessage(), e);
+                log.warn(String.format("Could not get JsonWebKey with kid %s from the KeySet of %s!", kid, dapsKeyUrl));
             }
+        } else if (log.isDebugEnabled()) {
+            log.debug(String.format("Provide public key with kid %s!", kid));
         }
+        return key;
+    }
+
+    /**
+     * Getter for the {@link DapsKeyCache} holding the keys of the DAPS JWKS.
+     *
+     * @return the cache holding the DAPS keys
+     */
+    public DapsKeyCache getKeyCache() {
+        return keyCache;
     }
 }
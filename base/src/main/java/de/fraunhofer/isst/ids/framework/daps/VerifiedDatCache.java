@@ -0,0 +1,179 @@
+package de.fraunhofer.isst.ids.framework.daps;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Bounded cache for the claims of DATs whose signature was already verified, keyed by the SHA-256 digest of the
+ * compact token. An entry expires at the exp claim of the token, but at the latest after the configured TTL.
+ *
+ * When the cache is full, expired entries are purged first, if that does not free space an arbitrary entry is evicted.
+ */
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class VerifiedDatCache {
+
+    static ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    Map<String, Entry> entries = new ConcurrentHashMap<>();
+    Duration ttl;
+    int maxSize;
+
+    AtomicLong hits = new AtomicLong();
+    AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a VerifiedDatCache.
+     *
+     * @param ttl maximum time a verification result is cached
+     * @param maxSize maximum number of cached tokens, 0 disables the cache
+     */
+    public VerifiedDatCache(final Duration ttl, final int maxSize) {
+        this.ttl = ttl;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the verified claims of a token.
+     *
+     * @param token the compact DAT
+     * @return the cached claims, null if the token was not verified before or the entry expired
+     */
+    public Jws<Claims> get(final String token) {
+        if (!isEnabled()) {
+            return null;
+        }
+        final var key = digest(token);
+        final var entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (!entry.getExpiration().isAfter(Instant.now())) {
+            entries.remove(key, entry);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.getClaims();
+    }
+
+    /**
+     * Remember the claims of a token whose signature was verified.
+     *
+     * @param token the compact DAT
+     * @param claims the verified claims of the token
+     */
+    public void put(final String token, final Jws<Claims> claims) {
+        if (!isEnabled()) {
+            return;
+        }
+        final var now = Instant.now();
+        var expiration = now.plus(ttl);
+        final var exp = claims.getBody().getExpiration();
+        if (exp != null && exp.toInstant().isBefore(expiration)) {
+            expiration = exp.toInstant();
+        }
+        if (!expiration.isAfter(now)) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            evict(now);
+        }
+        entries.put(digest(token), new Entry(claims, expiration));
+    }
+
+    /**
+     * Remove all cached verification results, e.g. after the DAPS keys changed.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Getter for the number of tokens found in the cache.
+     *
+     * @return number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Getter for the number of tokens that had to be verified.
+     *
+     * @return number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Getter for the number of currently cached tokens.
+     *
+     * @return size of the cache
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return true if results are cached (size and TTL greater than 0)
+     */
+    private boolean isEnabled() {
+        return maxSize > 0 && !ttl.isZero() && !ttl.isNegative();
+    }
+
+    /**
+     * Purge expired entries, evict an arbitrary entry if the cache is still full.
+     *
+     * @param now the current time
+     */
+    private void evict(final Instant now) {
+        entries.values().removeIf(entry -> !entry.getExpiration().isAfter(now));
+        final var iterator = entries.keySet().iterator();
+        while (entries.size() >= maxSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @param token the compact DAT
+     * @return Base64 encoded SHA-256 digest of the token
+     */
+    private static String digest(final String token) {
+        final var digest = DIGESTS.get().digest(token.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getEncoder().encodeToString(digest);
+    }
+
+    /**
+     * Verified claims together with the expiration of the cache entry.
+     */
+    @Getter
+    @AllArgsConstructor
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    static class Entry {
+        Jws<Claims> claims;
+        Instant expiration;
+    }
+}
@@ -13,11 +13,16 @@ import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import de.fraunhofer.iais.eis.ConfigurationModel;
 import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
 import de.fraunhofer.isst.ids.framework.configuration.KeyStoreManager;
 import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.Authenticator;
@@ -26,13 +31,20 @@ import okhttp3.OkHttpClient;
 
 /**
  * The ClientProvider uses the {@link ConfigurationContainer} to rebuild clients, when a new configurationContainer is created.
+ * Clients with custom timeouts are derived from the current client once per timeout profile and cached until the
+ * configuration is updated, they share the connection pool and dispatcher of the current client.
  */
 @Slf4j
 @FieldDefaults(level = AccessLevel.PRIVATE)
 public class ClientProvider {
 
+    /**
+     * Maximum number of cached clients with custom timeouts, clients for further profiles are built per call.
+     */
+    static final int MAX_CACHED_CLIENTS = 64;
+
     ConfigurationContainer configContainer;
-    OkHttpClient client;
+    volatile ClientState state;
 
     /**
      * Constructor, creating a Client provider using the KeyStore part from the ConfigurationContainer.
@@ -43,7 +55,7 @@ public class ClientProvider {
      */
     public ClientProvider(final ConfigurationContainer configContainer) throws KeyManagementException, NoSuchAlgorithmException {
         this.configContainer = configContainer;
-        this.client = createClientBuilder(configContainer.getConfigModel(), configContainer.getKeyManager()).build();
+        this.state = new ClientState(createClientBuilder(configContainer.getConfigModel(), configContainer.getKeyManager()).build());
     }
 
     /**
@@ -52,7 +64,7 @@ public class ClientProvider {
      * @return the OkHttpClient using the current configuration
      */
     public OkHttpClient getClient() {
-        return client;
+        return state.getClient();
     }
 
     /**
@@ -62,7 +74,8 @@ public class ClientProvider {
      * @throws KeyManagementException   if there is an error with any configured key when building an {@link OkHttpClient}
      */
     public void updateConfig() throws KeyManagementException, NoSuchAlgorithmException {
-        this.client = createClientBuilder(configContainer.getConfigModel(), configContainer.getKeyManager()).build();
+        //clients derived from the old client are dropped with the old state
+        this.state = new ClientState(createClientBuilder(configContainer.getConfigModel(), configContainer.getKeyManager()).build());
     }
 
     /**
@@ -78,17 +91,23 @@ public class ClientProvider {
                                               final Duration readTimeout,
                                               final Duration writeTimeout,
                                               final Duration callTimeout) {
+        final var current = state;
+        final var profile = new TimeoutProfile(connectTimeout, readTimeout, writeTimeout, callTimeout);
+        final var cached = current.getDerivedClients().get(profile);
+        if (cached != null) {
+            return cached;
+        }
+
         if (log.isDebugEnabled()) {
             log.debug("Creating OkHttp client");
         }
 
-        final var withTimeout = rebuildClientWithTimeouts(client, connectTimeout, readTimeout, writeTimeout, callTimeout);
-
-        if (log.isInfoEnabled()) {
-            log.info("Ok Http Client Protocols" + withTimeout.protocols());
+        final var withTimeout = rebuildClientWithTimeouts(current.getClient(), connectTimeout, readTimeout, writeTimeout, callTimeout);
+        if (current.getDerivedClients().size() >= MAX_CACHED_CLIENTS) {
+            return withTimeout;
         }
-
-        return withTimeout;
+        final var previous = current.getDerivedClients().putIfAbsent(profile, withTimeout);
+        return previous != null ? previous : withTimeout;
     }
 
     /**
@@ -138,8 +157,8 @@ public class ClientProvider {
 
         final var okHttpClient = builder.build();
 
-        if (log.isInfoEnabled()) {
-            log.info("Ok Http Client Protocols" + okHttpClient.protocols());
+        if (log.isDebugEnabled()) {
+            log.debug("Ok Http Client Protocols" + okHttpClient.protocols());
         }
 
         return okHttpClient;
@@ -249,4 +268,31 @@ public class ClientProvider {
         }
         return builder;
     }
+
+    /**
+     * The current client together with the clients derived from it, replaced as a whole when the configuration changes.
+     */
+    @Getter
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    private static class ClientState {
+        OkHttpClient client;
+        Map<TimeoutProfile, OkHttpClient> derivedClients = new ConcurrentHashMap<>();
+
+        ClientState(final OkHttpClient client) {
+            this.client = client;
+        }
+    }
+
+    /**
+     * Timeouts of a derived client (null values use the timeout of the current client).
+     */
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    private static class TimeoutProfile {
+        Duration connectTimeout;
+        Duration readTimeout;
+        Duration writeTimeout;
+        Duration callTimeout;
+    }
 }
@@ -0,0 +1,460 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Streaming reader for multipart bodies (RFC 2046), working directly on the bytes of an {@link InputStream} or
+ * {@link ByteBuffer}.
+ *
+ * Parts are returned one after another by {@link #nextPart()}, the content of a part is read lazily through
+ * {@link Part#getInputStream()}. Nothing is copied into Strings or written to disk, only a fixed size buffer is used.
+ * Unread content of a part is skipped when the next part is requested.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class MultipartStreamReader implements Closeable {
+
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+    static final int MAX_HEADER_SIZE = 16384;
+    static final byte CR = '\r';
+    static final byte LF = '\n';
+    static final byte DASH = '-';
+
+    final InputStream in;
+    final byte[] delimiter;
+    final byte[] buf;
+    int pos;
+    int limit;
+    boolean eof;
+
+    /**
+     * Bytes in [pos, partLimit) belong to the content of the current part.
+     */
+    int partLimit;
+
+    /**
+     * True if the delimiter starts at partLimit.
+     */
+    boolean atDelimiter;
+
+    boolean finished;
+    Part current;
+
+    /**
+     * Create a reader for a multipart body.
+     *
+     * @param in the multipart body
+     * @param boundary the boundary of the body (see {@link #boundaryOf(String)})
+     */
+    public MultipartStreamReader(final InputStream in, final String boundary) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+        this.buf = new byte[Math.max(DEFAULT_BUFFER_SIZE, delimiter.length * 2)];
+        //the first boundary has no preceding CRLF, seed the buffer so it matches the delimiter
+        buf[0] = CR;
+        buf[1] = LF;
+        this.limit = 2;
+    }
+
+    /**
+     * Create a reader for a multipart body held in a ByteBuffer.
+     *
+     * @param body the multipart body, read from its position to its limit
+     * @param boundary the boundary of the body (see {@link #boundaryOf(String)})
+     */
+    public MultipartStreamReader(final ByteBuffer body, final String boundary) {
+        this(new ByteBufferInputStream(body), boundary);
+    }
+
+    /**
+     * Read the boundary parameter of a multipart Content-Type header.
+     *
+     * @param contentType value of the Content-Type header (e.g. multipart/form-data; boundary=abc)
+     * @return the boundary, null if the content type is not multipart or has no boundary
+     */
+    public static String boundaryOf(final String contentType) {
+        if (contentType == null || !contentType.trim().toLowerCase(Locale.ROOT).startsWith("multipart/")) {
+            return null;
+        }
+        return parameter(contentType, "boundary");
+    }
+
+    /**
+     * Read a parameter of a header value like form-data; name="header".
+     *
+     * @param headerValue the header value
+     * @param name the parameter name (case insensitive)
+     * @return the unquoted parameter value, null if the parameter is missing
+     */
+    public static String parameter(final String headerValue, final String name) {
+        if (headerValue == null) {
+            return null;
+        }
+        for (final var param : headerValue.split("[;,]")) {
+            final var eq = param.indexOf('=');
+            if (eq > 0 && param.substring(0, eq).trim().equalsIgnoreCase(name)) {
+                final var value = param.substring(eq + 1).trim();
+                if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+                    return value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Move to the next part of the body, the unread content of the current part is skipped.
+     *
+     * @return the next part, null if the closing boundary was reached
+     * @throws IOException if the body cannot be read or is not a valid multipart body
+     */
+    public Part nextPart() throws IOException {
+        if (finished) {
+            return null;
+        }
+        //skip the preamble or the rest of the current part
+        while (partBytes() > 0) {
+            pos = partLimit;
+        }
+        if (current != null) {
+            current.closed = true;
+        }
+
+        pos += delimiter.length;
+        resetPart();
+        ensure(2);
+        if (limit - pos >= 2 && buf[pos] == DASH && buf[pos + 1] == DASH) {
+            finished = true;
+            current = null;
+            return null;
+        }
+        //skip transport padding after the boundary
+        while (ensure(1) && (buf[pos] == ' ' || buf[pos] == '\t')) {
+            pos++;
+        }
+        if (!ensure(2) || buf[pos] != CR || buf[pos + 1] != LF) {
+            throw new IOException("Malformed multipart body: boundary is not followed by CRLF!");
+        }
+        pos += 2;
+
+        current = new Part(readHeaders());
+        resetPart();
+        return current;
+    }
+
+    /**
+     * Close the underlying stream.
+     *
+     * @throws IOException if the stream cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        in.close();
+    }
+
+    /**
+     * Read the header lines of a part up to the empty line.
+     *
+     * @return the headers of the part, with lower case names
+     * @throws IOException if the headers cannot be read or are too large
+     */
+    private Map<String, String> readHeaders() throws IOException {
+        final var headers = new HashMap<String, String>();
+        var headerBytes = 0;
+        while (true) {
+            final var line = readLine();
+            if (line == null) {
+                throw new IOException("Malformed multipart body: unexpected end in part headers!");
+            }
+            headerBytes += line.length() + 2;
+            if (headerBytes > MAX_HEADER_SIZE) {
+                throw new IOException("Malformed multipart body: part headers too large!");
+            }
+            if (line.isEmpty()) {
+                return headers;
+            }
+            final var colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+    }
+
+    /**
+     * Read a CRLF terminated line.
+     *
+     * @return the line without CRLF, null if the stream ended
+     * @throws IOException if the stream cannot be read
+     */
+    private String readLine() throws IOException {
+        //number of bytes after pos already searched for CRLF
+        var scanned = 0;
+        while (true) {
+            for (var i = pos + scanned; i < limit - 1; i++) {
+                if (buf[i] == CR && buf[i + 1] == LF) {
+                    final var line = new String(buf, pos, i - pos, StandardCharsets.UTF_8);
+                    pos = i + 2;
+                    return line;
+                }
+            }
+            if (limit - pos >= buf.length) {
+                throw new IOException("Malformed multipart body: header line too long!");
+            }
+            scanned = Math.max(limit - 1 - pos, 0);
+            if (!fill()) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Determine how many bytes of the current part can be read from the buffer, without reaching the delimiter.
+     *
+     * @return number of readable bytes, 0 if the delimiter is reached
+     * @throws IOException if the stream ends before the delimiter
+     */
+    private int partBytes() throws IOException {
+        while (pos >= partLimit && !atDelimiter) {
+            final var index = indexOfDelimiter();
+            if (index >= 0) {
+                partLimit = index;
+                atDelimiter = true;
+            } else if (limit - pos - (delimiter.length - 1) > 0) {
+                //the tail of the buffer may hold the start of the delimiter
+                partLimit = limit - (delimiter.length - 1);
+            } else if (!fill()) {
+                throw new IOException("Malformed multipart body: unexpected end of stream, boundary not found!");
+            }
+        }
+        return partLimit - pos;
+    }
+
+    /**
+     * @return index of the delimiter in the buffer, -1 if it is not fully contained in [pos, limit)
+     */
+    private int indexOfDelimiter() {
+        final var first = delimiter[0];
+        final var last = limit - delimiter.length;
+        outer:
+        for (var i = pos; i <= last; i++) {
+            if (buf[i] != first) {
+                continue;
+            }
+            for (var j = 1; j < delimiter.length; j++) {
+                if (buf[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Forget the content limits of the current part.
+     */
+    private void resetPart() {
+        partLimit = pos;
+        atDelimiter = false;
+    }
+
+    /**
+     * Fill the buffer until at least n bytes are available.
+     *
+     * @param n number of bytes
+     * @return true if n bytes are available
+     * @throws IOException if the stream cannot be read
+     */
+    private boolean ensure(final int n) throws IOException {
+        while (limit - pos < n) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Move the unread bytes to the start of the buffer and read more bytes from the stream.
+     *
+     * @return false if the stream ended
+     * @throws IOException if the stream cannot be read
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            partLimit = Math.max(partLimit - pos, 0);
+            pos = 0;
+        }
+        final var read = in.read(buf, limit, buf.length - limit);
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    /**
+     * A part of a multipart body, its content can be read once until the next part is requested.
+     */
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    public final class Part {
+        final Map<String, String> headers;
+        final InputStream inputStream = new PartInputStream();
+        boolean closed;
+
+        private Part(final Map<String, String> headers) {
+            this.headers = Collections.unmodifiableMap(headers);
+        }
+
+        /**
+         * @return the headers of the part, with lower case names
+         */
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * @return the name parameter of the Content-Disposition header, null if there is none
+         */
+        public String getName() {
+            return parameter(headers.get("content-disposition"), "name");
+        }
+
+        /**
+         * @return the filename parameter of the Content-Disposition header, null if there is none
+         */
+        public String getFileName() {
+            return parameter(headers.get("content-disposition"), "filename");
+        }
+
+        /**
+         * @return the Content-Type of the part, null if there is none
+         */
+        public String getContentType() {
+            return headers.get("content-type");
+        }
+
+        /**
+         * @return the charset of the Content-Type of the part, UTF-8 if there is none
+         */
+        public Charset getCharset() {
+            final var charset = parameter(getContentType(), "charset");
+            try {
+                return charset == null ? StandardCharsets.UTF_8 : Charset.forName(charset);
+            } catch (IllegalArgumentException e) {
+                return StandardCharsets.UTF_8;
+            }
+        }
+
+        /**
+         * @return the content of the part, read directly from the underlying stream
+         */
+        public InputStream getInputStream() {
+            return inputStream;
+        }
+
+        /**
+         * Read the remaining content of the part as String, using its charset.
+         *
+         * @return the content of the part
+         * @throws IOException if the content cannot be read
+         */
+        public String getString() throws IOException {
+            final var out = new ByteArrayOutputStream();
+            inputStream.transferTo(out);
+            return out.toString(getCharset());
+        }
+
+        /**
+         * Stream over the content of the part, ending at the next delimiter.
+         */
+        private class PartInputStream extends InputStream {
+
+            @Override
+            public int read() throws IOException {
+                if (closed || partBytes() == 0) {
+                    return -1;
+                }
+                return buf[pos++] & 0xFF;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (closed) {
+                    return -1;
+                }
+                final var available = partBytes();
+                if (available == 0) {
+                    return -1;
+                }
+                final var n = Math.min(available, len);
+                System.arraycopy(buf, pos, b, off, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return closed ? 0 : Math.max(partLimit - pos, 0);
+            }
+        }
+    }
+
+    /**
+     * InputStream reading the remaining bytes of a ByteBuffer.
+     */
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    private static class ByteBufferInputStream extends InputStream {
+        ByteBuffer buffer;
+
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final var n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
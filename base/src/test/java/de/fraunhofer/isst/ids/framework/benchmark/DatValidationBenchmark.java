@@ -0,0 +1,111 @@
+package de.fraunhofer.isst.ids.framework.benchmark;
+
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import de.fraunhofer.isst.ids.framework.daps.ClaimsException;
+import de.fraunhofer.isst.ids.framework.daps.DatValidationEngine;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark comparing the DAT signature verification with a new jjwt parser per call (as done by
+ * DapsValidator.getClaims(Message, Key)) against the prebuilt parsers of the {@link DatValidationEngine}.
+ *
+ * Run the main method from the test classpath, it executes both benchmarks with 1, 8 and 32 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatValidationBenchmark {
+
+    static final String KID = "default";
+
+    Key publicKey;
+    String token;
+    DatValidationEngine engine;
+
+    /**
+     * Create a RSA key pair and a signed DAT, valid for one day.
+     *
+     * @throws NoSuchAlgorithmException if RSA is not available
+     */
+    @Setup
+    public void setup() throws NoSuchAlgorithmException {
+        final var generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        final KeyPair keyPair = generator.generateKeyPair();
+        final var now = System.currentTimeMillis();
+
+        publicKey = keyPair.getPublic();
+        token = Jwts.builder()
+                .setHeaderParam("kid", KID)
+                .setIssuer("https://daps.aisec.fraunhofer.de")
+                .setSubject("benchmark")
+                .setIssuedAt(new Date(now))
+                .setNotBefore(new Date(now))
+                .setExpiration(new Date(now + TimeUnit.DAYS.toMillis(1)))
+                .signWith(SignatureAlgorithm.RS256, keyPair.getPrivate())
+                .compact();
+        engine = new DatValidationEngine(() -> publicKey, Set.of("RS256"), 0);
+    }
+
+    /**
+     * Verify the DAT with a parser built for this call.
+     *
+     * @return the verified claims
+     */
+    @Benchmark
+    public Jws<Claims> perCallParser() {
+        return Jwts.parser().setSigningKey(publicKey).parseClaimsJws(token);
+    }
+
+    /**
+     * Verify the DAT with the shared parser of the DatValidationEngine.
+     *
+     * @return the verified claims
+     * @throws ClaimsException if the token cannot be verified
+     */
+    @Benchmark
+    public Jws<Claims> validationEngine() throws ClaimsException {
+        return engine.parse(token);
+    }
+
+    /**
+     * Run the benchmarks with 1, 8 and 32 threads.
+     *
+     * @param args unused
+     * @throws RunnerException if JMH fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        for (final var threads : new int[]{1, 8, 32}) {
+            new Runner(new OptionsBuilder()
+                    .include(DatValidationBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package de.fraunhofer.isst.ids.framework.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import de.fraunhofer.isst.ids.framework.util.MultipartStreamReader;
+import org.apache.commons.fileupload.FileUpload;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.UploadContext;
+import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark comparing the previous String based multipart parsing (String copy, platform charset re-encoding
+ * and commons-fileupload with DiskFileItemFactory) against the {@link MultipartStreamReader}, reading an IDS
+ * multipart response with payloads from 1 KB to 500 MB.
+ *
+ * Run the main method from the test classpath, the forked JVM needs a large heap for the 500 MB payload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class MultipartParserBenchmark {
+
+    static final String BOUNDARY = "msgpart";
+
+    @Param({"1024", "1048576", "104857600", "524288000"})
+    int payloadSize;
+
+    byte[] body;
+
+    /**
+     * Build a multipart body with an IDS header part and a payload part of the configured size.
+     *
+     * @throws IOException if the body cannot be written
+     */
+    @Setup
+    public void setup() throws IOException {
+        final var payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+        final var out = new ByteArrayOutputStream(payloadSize + 1024);
+        out.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"header\"\r\n"
+                + "Content-Type: application/json\r\n\r\n"
+                + "{\"@type\":\"ids:ResponseMessage\",\"@id\":\"https://w3id.org/idsa/autogen/responseMessage/1\"}\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"payload\"\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(payload);
+        out.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        body = out.toByteArray();
+    }
+
+    /**
+     * Previous approach: read the body into a String and parse it with commons-fileupload.
+     *
+     * @return the parsed parts
+     * @throws FileUploadException if the body cannot be parsed
+     */
+    @Benchmark
+    public Map<String, String> stringParser() throws FileUploadException {
+        final var postBody = new String(body, StandardCharsets.UTF_8);
+        final var parts = new HashMap<String, String>();
+        for (final var item : new FileUpload(new DiskFileItemFactory()).parseRequest(new StringContext(postBody))) {
+            if (item.isFormField()) {
+                parts.put(item.getFieldName(), item.getString());
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Read the header as String and consume the payload as stream with the MultipartStreamReader.
+     *
+     * @return number of payload bytes read
+     * @throws IOException if the body cannot be parsed
+     */
+    @Benchmark
+    public long streamReader() throws IOException {
+        final var reader = new MultipartStreamReader(new ByteArrayInputStream(body), BOUNDARY);
+        reader.nextPart().getString();
+        final var payload = reader.nextPart().getInputStream();
+        final var buffer = new byte[8192];
+        long total = 0;
+        int read;
+        while ((read = payload.read(buffer)) >= 0) {
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Run the benchmarks.
+     *
+     * @param args unused
+     * @throws RunnerException if JMH fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MultipartParserBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    /**
+     * UploadContext of the previous MultipartStringParser.
+     */
+    private static class StringContext implements UploadContext {
+        private final String postBody;
+
+        StringContext(final String postBody) {
+            this.postBody = postBody;
+        }
+
+        @Override
+        public long contentLength() {
+            return postBody.length();
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return "Cp1252";
+        }
+
+        @Override
+        public String getContentType() {
+            return "multipart/form-data, boundary=" + BOUNDARY;
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(postBody.getBytes());
+        }
+    }
+}
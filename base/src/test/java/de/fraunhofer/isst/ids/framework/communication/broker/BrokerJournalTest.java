@@ -0,0 +1,64 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Test replaying and compacting the journal of the BrokerOutboundQueue
+ */
+public class BrokerJournalTest {
+
+    private static final String BROKER = "https://broker.example.com/infrastructure";
+
+    /**
+     * Newer messages replace older ones for the same resource, done messages and broken lines are dropped on replay
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    @Test
+    public void testReplay() throws IOException {
+        final var directory = Files.createTempDirectory("broker-journal");
+        final var resource = URI.create("https://example.com/resource/1");
+
+        try (var journal = new BrokerJournal(directory, false)) {
+            journal.replay();
+            journal.put(new QueuedBrokerMessage(BROKER, QueuedBrokerMessage.Type.RESOURCE_UPDATE, resource, "{\"v\":1}"));
+            journal.put(new QueuedBrokerMessage(BROKER, QueuedBrokerMessage.Type.CONNECTOR_UPDATE, null, null));
+            journal.put(new QueuedBrokerMessage(BROKER, QueuedBrokerMessage.Type.RESOURCE_UPDATE, resource, "{\"v\":2}"));
+            journal.put(new QueuedBrokerMessage(BROKER, QueuedBrokerMessage.Type.CONNECTOR_UNAVAILABLE, null, null));
+            journal.done(BROKER + " connector");
+        }
+        Files.write(directory.resolve(BrokerJournal.FILE_NAME), "{\"op\":\"put\",\"bro".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+
+        try (var journal = new BrokerJournal(directory, false)) {
+            final var messages = List.copyOf(journal.replay().values());
+            assertEquals(1, messages.size());
+            assertEquals(resource, messages.get(0).getResourceID());
+            assertEquals("{\"v\":2}", messages.get(0).getPayload());
+            assertEquals(1, journal.getEntries());
+        }
+
+        try (var journal = new BrokerJournal(directory, false)) {
+            final var message = journal.replay().values().iterator().next();
+            assertEquals(QueuedBrokerMessage.Type.RESOURCE_UPDATE, message.getType());
+            journal.put(new QueuedBrokerMessage(BROKER, QueuedBrokerMessage.Type.RESOURCE_UNAVAILABLE, resource, null));
+        }
+
+        try (var journal = new BrokerJournal(directory, false)) {
+            final var message = journal.replay().values().iterator().next();
+            assertEquals(QueuedBrokerMessage.Type.RESOURCE_UNAVAILABLE, message.getType());
+            assertNull(message.getPayload());
+        }
+    }
+
+}
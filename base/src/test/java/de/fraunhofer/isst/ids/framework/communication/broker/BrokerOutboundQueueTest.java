@@ -0,0 +1,172 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+
+import de.fraunhofer.iais.eis.Connector;
+import de.fraunhofer.iais.eis.DynamicAttributeTokenBuilder;
+import de.fraunhofer.iais.eis.TokenFormat;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import de.fraunhofer.isst.ids.framework.daps.DapsTokenProvider;
+import de.fraunhofer.isst.ids.framework.util.ClientProvider;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test deduplication, backoff, dropping and replay of messages in the BrokerOutboundQueue
+ */
+public class BrokerOutboundQueueTest {
+
+    private static final String BROKER = "https://broker.example.com/infrastructure";
+    private static final String OTHER_BROKER = "https://other-broker.example.com/infrastructure";
+
+    private static final URI RESOURCE = URI.create("https://example.com/resource/1");
+    private static final URI OTHER_RESOURCE = URI.create("https://example.com/resource/2");
+
+    private final List<String> requestedHosts = new CopyOnWriteArrayList<>();
+
+    /**
+     * A newer message for the same broker and resource replaces the queued one
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    @Test
+    public void testDeduplication() throws IOException {
+        final var queue = queue(Files.createTempDirectory("broker-queue"), Map.of());
+        queue.queueResourceRemoval(BROKER, RESOURCE);
+        queue.queueResourceRemoval(BROKER, RESOURCE);
+        queue.queueResourceRemoval(BROKER, OTHER_RESOURCE);
+        assertEquals(2, queue.size());
+
+        queue.dispatch();
+        assertEquals(2, requestedHosts.size());
+        assertEquals(0, queue.size());
+        queue.shutdown();
+    }
+
+    /**
+     * A broker answering with a server error is not contacted again until its backoff expired, other brokers are
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    @Test
+    public void testBackoff() throws IOException {
+        final var queue = queue(Files.createTempDirectory("broker-queue"), Map.of(host(BROKER), 503));
+        queue.queueResourceRemoval(BROKER, RESOURCE);
+        queue.queueResourceRemoval(BROKER, OTHER_RESOURCE);
+
+        queue.dispatch();
+        assertEquals(List.of(host(BROKER)), requestedHosts, "Broker must not be contacted again after a failure");
+        assertEquals(2, queue.size());
+
+        queue.queueResourceRemoval(OTHER_BROKER, RESOURCE);
+        queue.dispatch();
+        assertEquals(List.of(host(BROKER), host(OTHER_BROKER)), requestedHosts);
+        assertEquals(2, queue.size(), "Messages of the failed broker must be kept");
+        queue.shutdown();
+    }
+
+    /**
+     * Messages rejected with a client error or addressed to an invalid broker URI are dropped without blocking the
+     * other messages
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    @Test
+    public void testDrop() throws IOException {
+        final var queue = queue(Files.createTempDirectory("broker-queue"), Map.of(host(BROKER), 400));
+        queue.queueResourceRemoval("not a broker uri", RESOURCE);
+        queue.queueResourceRemoval(BROKER, RESOURCE);
+        queue.queueResourceRemoval(OTHER_BROKER, RESOURCE);
+
+        queue.dispatch();
+        assertEquals(List.of(host(BROKER), host(OTHER_BROKER)), requestedHosts);
+        assertEquals(0, queue.size());
+        queue.shutdown();
+    }
+
+    /**
+     * Messages not sent before a shutdown are replayed from the journal and sent by the next queue
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    @Test
+    public void testReplay() throws IOException {
+        final var directory = Files.createTempDirectory("broker-queue");
+        final var queue = queue(directory, Map.of(host(BROKER), 503));
+        queue.queueResourceRemoval(BROKER, RESOURCE);
+        queue.queueSelfDescriptionUpdate(BROKER);
+        queue.dispatch();
+        queue.shutdown();
+
+        final var replayed = queue(directory, Map.of());
+        assertEquals(2, replayed.size());
+        replayed.dispatch();
+        assertEquals(0, replayed.size());
+        replayed.shutdown();
+
+        final var empty = queue(directory, Map.of());
+        assertEquals(0, empty.size(), "Sent messages must not be replayed");
+        empty.shutdown();
+    }
+
+    /**
+     * Create a started queue whose brokers answer with the given status code (200 by default).
+     *
+     * @param directory directory of the journal
+     * @param statusByHost status code of the brokers by host
+     * @return the queue, it is only dispatched when the test calls {@link BrokerOutboundQueue#dispatch()}
+     * @throws IOException if the journal cannot be read
+     */
+    private BrokerOutboundQueue queue(final Path directory, final Map<String, Integer> statusByHost) throws IOException {
+        final var client = new OkHttpClient.Builder().addInterceptor(chain -> {
+            final var host = chain.request().url().host();
+            requestedHosts.add(host);
+            return new Response.Builder()
+                    .request(chain.request())
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(statusByHost.getOrDefault(host, 200))
+                    .message("")
+                    .body(ResponseBody.create("", null))
+                    .build();
+        }).build();
+        final var clientProvider = mock(ClientProvider.class);
+        when(clientProvider.getClient()).thenReturn(client);
+
+        final var connector = mock(Connector.class);
+        when(connector.getId()).thenReturn(URI.create("https://example.com/connector"));
+        final var container = mock(ConfigurationContainer.class);
+        when(container.getConnector()).thenReturn(connector);
+        when(container.getSelfDescriptionBytes()).thenReturn("{}".getBytes(StandardCharsets.UTF_8));
+
+        final var token = new DynamicAttributeTokenBuilder()
+                ._tokenFormat_(TokenFormat.JWT)
+                ._tokenValue_("token")
+                .build();
+        final var tokenProvider = mock(DapsTokenProvider.class);
+        when(tokenProvider.getDAT()).thenReturn(token);
+
+        final var queue = new BrokerOutboundQueue(container, clientProvider, tokenProvider, directory.toString(),
+                                                  mock(ScheduledExecutorService.class), 3_600_000);
+        queue.init();
+        return queue;
+    }
+
+    private static String host(final String uri) {
+        return URI.create(uri).getHost();
+    }
+}
@@ -0,0 +1,136 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.fraunhofer.iais.eis.QueryLanguage;
+import de.fraunhofer.iais.eis.QueryScope;
+import de.fraunhofer.iais.eis.QueryTarget;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test caching, eviction and invalidation of broker query results
+ */
+public class BrokerQueryCacheTest {
+
+    private static final String BROKER = "https://broker.example.com/infrastructure";
+
+    /**
+     * Successful results are cached per query until invalidated, the total size is bounded
+     *
+     * @throws IOException if a query cannot be sent
+     */
+    @Test
+    public void testCache() throws IOException {
+        final var cache = new BrokerQueryCache(Duration.ofHours(1), Duration.ZERO, 10);
+        final var loads = new AtomicInteger();
+
+        for (var i = 0; i < 3; i++) {
+            try (var response = query(cache, "SELECT ?a", loads, 200)) {
+                assertEquals("12345", response.body().string());
+            }
+        }
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.getHits());
+
+        query(cache, "SELECT ?b", loads, 200).close();
+        query(cache, "SELECT ?c", loads, 200).close();
+        assertEquals(3, loads.get());
+        assertTrue(cache.getBytes() <= 10, "Cache must not exceed its size limit");
+
+        cache.invalidate(BROKER);
+        assertEquals(0, cache.getBytes());
+        query(cache, "SELECT ?c", loads, 200).close();
+        assertEquals(4, loads.get());
+
+        query(cache, "SELECT ?d", loads, 500).close();
+        query(cache, "SELECT ?d", loads, 500).close();
+        assertEquals(6, loads.get(), "Unsuccessful results must not be cached");
+        cache.shutdown();
+    }
+
+    /**
+     * Stale results are returned while they are refreshed in background, a refresh started before an invalidation
+     * must not put the old result back into the cache
+     *
+     * @throws Exception if a query cannot be sent or the test is interrupted
+     */
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        var refresher = Executors.newSingleThreadExecutor();
+        var cache = new BrokerQueryCache(Duration.ofMillis(10), Duration.ofHours(1), 100, refresher);
+        final var loads = new AtomicInteger();
+
+        query(cache, "SELECT ?a", loads, 200).close();
+        Thread.sleep(50);
+        try (var response = query(cache, "SELECT ?a", () -> response(200, "123456789"))) {
+            assertEquals("12345", response.body().string(), "Stale result must be returned while refreshing");
+        }
+        refresher.shutdown();
+        assertTrue(refresher.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(9, cache.getBytes(), "Refreshed result must replace the stale one");
+
+        refresher = Executors.newSingleThreadExecutor();
+        cache = new BrokerQueryCache(Duration.ofMillis(10), Duration.ofHours(1), 100, refresher);
+        final var started = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+
+        query(cache, "SELECT ?a", loads, 200).close();
+        Thread.sleep(50);
+        query(cache, "SELECT ?a", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return response(200, "123456789");
+        }).close();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        cache.invalidate(BROKER);
+        release.countDown();
+        refresher.shutdown();
+        assertTrue(refresher.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, cache.getBytes(), "Refresh started before the invalidation must not be cached");
+
+        final var before = loads.get();
+        query(cache, "SELECT ?a", loads, 200).close();
+        assertEquals(before + 1, loads.get());
+    }
+
+    private static Response query(final BrokerQueryCache cache, final String query, final AtomicInteger loads,
+                                  final int code) throws IOException {
+        return query(cache, query, () -> {
+            loads.incrementAndGet();
+            return response(code, "12345");
+        });
+    }
+
+    private static Response query(final BrokerQueryCache cache, final String query,
+                                  final BrokerQueryCache.QueryLoader loader) throws IOException {
+        return cache.get(BROKER, query, QueryLanguage.SPARQL, QueryScope.ALL, QueryTarget.BROKER, loader);
+    }
+
+    private static Response response(final int code, final String body) {
+        return new Response.Builder()
+                .request(new Request.Builder().url(BROKER).build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("")
+                .body(ResponseBody.create(body, MediaType.get("text/plain")))
+                .build();
+    }
+
+}
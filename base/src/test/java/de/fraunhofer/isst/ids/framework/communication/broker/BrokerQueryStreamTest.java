@@ -0,0 +1,88 @@
+package de.fraunhofer.isst.ids.framework.communication.broker;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test reading broker query results with the BrokerQueryStream
+ */
+public class BrokerQueryStreamTest {
+
+    private static final String BROKER = "https://broker.example.com/infrastructure";
+
+    /**
+     * SELECT results are read as variables and bindings, empty cells are absent from the bindings
+     *
+     * @throws IOException if the result cannot be read
+     */
+    @Test
+    public void testReadBindings() throws IOException {
+        try (var stream = BrokerQueryStream.of(response("?a\t?b\n1\t\n\t2\nx\ty\n"))) {
+            assertEquals(List.of("a", "b"), stream.readVariables());
+            assertEquals(Map.of("a", "1"), stream.nextBinding());
+            assertEquals(Map.of("b", "2"), stream.nextBinding());
+            assertEquals(Map.of("a", "x", "b", "y"), stream.nextBinding());
+            assertNull(stream.nextBinding());
+            assertFalse(stream.hasNext());
+        }
+
+        try (var stream = BrokerQueryStream.of(response(""))) {
+            assertEquals(List.of(), stream.readVariables());
+            assertNull(stream.nextBinding());
+        }
+    }
+
+    /**
+     * CONSTRUCT results are read line by line until the iterator is exhausted
+     *
+     * @throws IOException if the result cannot be read
+     */
+    @Test
+    public void testReadLines() throws IOException {
+        final var triples = "<urn:s> <urn:p> <urn:o1> .\n<urn:s> <urn:p> <urn:o2> .\n";
+        try (var stream = BrokerQueryStream.of(response(triples))) {
+            assertEquals("<urn:s> <urn:p> <urn:o1> .", stream.next());
+            assertEquals(List.of("<urn:s> <urn:p> <urn:o2> ."), stream.lines().collect(Collectors.toList()));
+            assertFalse(stream.hasNext());
+            assertThrows(NoSuchElementException.class, stream::next);
+        }
+    }
+
+    private static Response response(final String payload) {
+        final var body = "--msgpart\r\n"
+                + "Content-Disposition: form-data; name=\"header\"\r\n"
+                + "\r\n"
+                + "{}\r\n"
+                + "--msgpart\r\n"
+                + "Content-Disposition: form-data; name=\"payload\"\r\n"
+                + "Content-Type: text/tab-separated-values; charset=UTF-8\r\n"
+                + "\r\n"
+                + payload + "\r\n"
+                + "--msgpart--\r\n";
+        final var contentType = "multipart/form-data; boundary=msgpart";
+        return new Response.Builder()
+                .request(new Request.Builder().url(BROKER).build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("")
+                .header("Content-Type", contentType)
+                .body(ResponseBody.create(body, MediaType.get(contentType)))
+                .build();
+    }
+
+}
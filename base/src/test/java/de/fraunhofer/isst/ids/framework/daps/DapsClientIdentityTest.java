@@ -0,0 +1,21 @@
+package de.fraunhofer.isst.ids.framework.daps;
+
+import org.junit.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test the formatting of SKI/AKI values used for the connector UUID
+ */
+public class DapsClientIdentityTest {
+
+    /**
+     * Key identifiers are formatted as uppercase hex pairs, each followed by a colon
+     */
+    @Test
+    public void testColonHexFormatting() {
+        assertEquals("", DapsClientIdentity.toColonHex(new byte[0]));
+        assertEquals("00:0A:FF:7F:80:", DapsClientIdentity.toColonHex(new byte[]{0x00, 0x0A, (byte) 0xFF, 0x7F, (byte) 0x80}));
+    }
+
+}
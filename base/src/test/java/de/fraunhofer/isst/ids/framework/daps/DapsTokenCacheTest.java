@@ -0,0 +1,66 @@
+package de.fraunhofer.isst.ids.framework.daps;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test caching and invalidation of DATs in the DapsTokenCache
+ */
+public class DapsTokenCacheTest {
+
+    /**
+     * A token request in flight while the cache is invalidated is handed to its waiting callers, but not cached
+     *
+     * @throws Exception if the test is interrupted
+     */
+    @Test
+    public void testInvalidateDuringAcquisition() throws Exception {
+        final var started = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+        final var oldToken = token("old");
+        final var newToken = token("new");
+        final var scheduler = Executors.newSingleThreadScheduledExecutor();
+        final var cache = new DapsTokenCache(() -> {
+            if (started.getCount() > 0) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return oldToken;
+            }
+            return newToken;
+        }, scheduler, Duration.ofMinutes(1), Duration.ofSeconds(10), DapsTokenCache.FallbackPolicy.INVALID_TOKEN);
+
+        final var pending = cache.acquire();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        cache.invalidate();
+        release.countDown();
+        assertEquals(oldToken, pending.get(10, TimeUnit.SECONDS));
+
+        assertEquals(newToken, cache.getToken(), "Token acquired before the invalidation must not be cached");
+        assertEquals(newToken, cache.getToken());
+        assertEquals(1, cache.getHits());
+        scheduler.shutdownNow();
+    }
+
+    private static String token(final String subject) {
+        final var encoder = Base64.getUrlEncoder().withoutPadding();
+        final var exp = Instant.now().plus(Duration.ofHours(1)).getEpochSecond();
+        return encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(String.format("{\"sub\":\"%s\",\"exp\":%d}", subject, exp).getBytes(StandardCharsets.UTF_8))
+                + ".sig";
+    }
+
+}
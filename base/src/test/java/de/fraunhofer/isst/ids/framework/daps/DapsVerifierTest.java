@@ -0,0 +1,71 @@
+package de.fraunhofer.isst.ids.framework.daps;
+
+import java.util.List;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.impl.DefaultJws;
+import io.jsonwebtoken.impl.DefaultJwsHeader;
+import org.junit.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the time claim checks and additional rules of the DapsVerifier
+ */
+public class DapsVerifierTest {
+
+    /**
+     * Tokens are valid between nbf and exp, with second precision
+     *
+     * @throws ClaimsException if the claims cannot be verified
+     */
+    @Test
+    public void testTimeClaims() throws ClaimsException {
+        final var now = System.currentTimeMillis() / 1000;
+
+        assertTrue(DapsVerifier.verify(jws(now - 60, now + 3600)));
+        assertFalse(DapsVerifier.verify(jws(now - 7200, now - 3600)), "Token expired an hour ago must be rejected");
+        assertFalse(DapsVerifier.verify(jws(now + 3600, now + 7200)), "Token not valid yet must be rejected");
+        assertTrue(DapsVerifier.verify(jws(now - 7200, now - 30), 60, List.of()), "Expiration within leeway must be accepted");
+        assertThrows(ClaimsException.class, () -> DapsVerifier.verify(new DefaultJws<>(new DefaultJwsHeader(), Jwts.claims(), "")));
+    }
+
+    /**
+     * Additional rules must all be satisfied
+     *
+     * @throws ClaimsException if the claims cannot be verified
+     */
+    @Test
+    public void testVerificationRules() throws ClaimsException {
+        final var now = System.currentTimeMillis() / 1000;
+        final var token = jws(now - 60, now + 3600);
+        token.getBody().put(Claims.AUDIENCE, List.of("idsc:IDS_CONNECTORS_ALL"));
+        token.getBody().put("securityProfile", "idsc:BASE_SECURITY_PROFILE");
+
+        assertTrue(DapsVerifier.verify(token, 0, List.of(
+                DapsVerificationRule.audience("idsc:IDS_CONNECTORS_ALL"),
+                DapsVerificationRule.securityProfile("idsc:BASE_SECURITY_PROFILE"))));
+        assertFalse(DapsVerifier.verify(token, 0, List.of(
+                DapsVerificationRule.securityProfile("idsc:TRUST_SECURITY_PROFILE"))));
+        assertFalse(DapsVerifier.verify(token, 0, List.of(
+                DapsVerificationRule.referringConnector("https://connector.example.com"))));
+    }
+
+    /**
+     * @param notBefore nbf claim in epoch seconds
+     * @param expiration exp claim in epoch seconds
+     * @return unsigned Jws with the given time claims
+     */
+    private static Jws<Claims> jws(final long notBefore, final long expiration) {
+        final var claims = Jwts.claims();
+        claims.put(Claims.NOT_BEFORE, notBefore);
+        claims.put(Claims.EXPIRATION, expiration);
+        claims.put(Claims.ISSUED_AT, notBefore);
+        return new DefaultJws<>(new DefaultJwsHeader(), claims, "");
+    }
+
+}
@@ -0,0 +1,106 @@
+package de.fraunhofer.isst.ids.framework.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.fileupload.FileUploadException;
+import org.junit.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test reading multipart bodies with the MultipartStreamReader
+ */
+public class MultipartStreamReaderTest {
+
+    private static final String BODY = "preamble\r\n"
+            + "--msgpart\r\n"
+            + "Content-Disposition: form-data; name=\"header\"\r\n"
+            + "Content-Type: application/json; charset=UTF-8\r\n"
+            + "\r\n"
+            + "{\"@type\":\"ids:Message\",\"label\":\"Grüße\"}\r\n"
+            + "--msgpart\r\n"
+            + "Content-Disposition: form-data; name=\"payload\"\r\n"
+            + "\r\n"
+            + "line one\r\n-msgpart\r\nline two\r\n"
+            + "--msgpart--\r\n";
+
+    /**
+     * Parts are read with their names and content, also when the stream returns only single bytes
+     *
+     * @throws IOException if the body cannot be read
+     */
+    @Test
+    public void testReadParts() throws IOException {
+        final var bytes = BODY.getBytes(StandardCharsets.UTF_8);
+        final InputStream singleBytes = new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(final byte[] b, final int off, final int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+
+        for (final var in : new InputStream[]{new ByteArrayInputStream(bytes), singleBytes}) {
+            final var reader = new MultipartStreamReader(in, "msgpart");
+            final var header = reader.nextPart();
+            assertEquals("header", header.getName());
+            assertEquals("{\"@type\":\"ids:Message\",\"label\":\"Grüße\"}", header.getString());
+            final var payload = reader.nextPart();
+            assertEquals("payload", payload.getName());
+            assertEquals("line one\r\n-msgpart\r\nline two", payload.getString());
+            assertNull(reader.nextPart());
+        }
+    }
+
+    /**
+     * Unread content is skipped when the next part is requested, ByteBuffers can be used as source
+     *
+     * @throws IOException if the body cannot be read
+     */
+    @Test
+    public void testSkipUnreadPart() throws IOException {
+        final var reader = new MultipartStreamReader(ByteBuffer.wrap(BODY.getBytes(StandardCharsets.UTF_8)), "msgpart");
+        final var header = reader.nextPart();
+        assertEquals('{', header.getInputStream().read());
+        assertEquals("payload", reader.nextPart().getName());
+        assertEquals(-1, header.getInputStream().read());
+    }
+
+    /**
+     * Truncated bodies are rejected by the reader, in the part headers and in the content of a part
+     *
+     * @throws IOException if the first part cannot be read
+     */
+    @Test
+    public void testTruncatedBody() throws IOException {
+        final var inHeaders = BODY.substring(0, BODY.indexOf("name=\"payload\""));
+        final var headersReader = new MultipartStreamReader(new ByteArrayInputStream(inHeaders.getBytes(StandardCharsets.UTF_8)), "msgpart");
+        assertEquals("header", headersReader.nextPart().getName());
+        assertThrows(IOException.class, headersReader::nextPart);
+
+        final var inContent = BODY.substring(0, BODY.indexOf("line two"));
+        final var contentReader = new MultipartStreamReader(new ByteArrayInputStream(inContent.getBytes(StandardCharsets.UTF_8)), "msgpart");
+        assertEquals("header", contentReader.nextPart().getName());
+        assertEquals("payload", contentReader.nextPart().getName());
+        assertThrows(IOException.class, contentReader::nextPart);
+    }
+
+    /**
+     * Boundaries are read from the Content-Type header, truncated bodies are rejected by the MultipartStringParser
+     */
+    @Test
+    public void testBoundaryAndMalformedBody() {
+        assertEquals("msgpart", MultipartStreamReader.boundaryOf("multipart/form-data; boundary=msgpart"));
+        assertEquals("a b", MultipartStreamReader.boundaryOf("multipart/mixed; charset=UTF-8; boundary=\"a b\""));
+        assertNull(MultipartStreamReader.boundaryOf("application/json"));
+
+        final var truncated = BODY.substring(0, BODY.indexOf("line two"));
+        assertThrows(FileUploadException.class, () -> MultipartStringParser.stringToMultipart(truncated.substring(truncated.indexOf("--"))));
+    }
+
+}
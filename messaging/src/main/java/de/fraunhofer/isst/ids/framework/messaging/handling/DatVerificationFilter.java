@@ -0,0 +1,64 @@
+package de.fraunhofer.isst.ids.framework.messaging.handling;
+
+import de.fraunhofer.iais.eis.ConnectorDeployMode;
+import de.fraunhofer.iais.eis.Message;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import de.fraunhofer.isst.ids.framework.daps.ClaimsException;
+import de.fraunhofer.isst.ids.framework.daps.DapsValidator;
+import de.fraunhofer.isst.ids.framework.messaging.model.filters.PreDispatchingFilter;
+import de.fraunhofer.isst.ids.framework.messaging.model.filters.PreDispatchingFilterResult;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * PreDispatchingFilter verifying the DAT of incoming messages, registered by the {@link MessageDispatcher}.
+ * It has order {@link #ORDER}, filters with a lower order (e.g. cheap checks of the header) run before the signature
+ * of the DAT is verified.
+ */
+@AllArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class DatVerificationFilter implements PreDispatchingFilter {
+
+    /**
+     * The order of the DAT verification.
+     */
+    public static final int ORDER = 0;
+
+    DapsValidator dapsValidator;
+    ConfigurationContainer configurationContainer;
+
+    /**
+     * Verify the DAT of the message, skipped if the connector runs in TEST_DEPLOYMENT mode.
+     *
+     * @param in the RequestMessage to be filtered
+     * @return successful result if the DAT is valid
+     */
+    @Override
+    public PreDispatchingFilterResult process(final Message in) {
+        if (configurationContainer.getConfigModel().getConnectorDeployMode() == ConnectorDeployMode.TEST_DEPLOYMENT) {
+            return PreDispatchingFilterResult.successResult("ConnectorDeployMode is Test. Skipping Token verification!");
+        }
+
+        try {
+            final var verified = dapsValidator.verifyClaims(dapsValidator.getClaims(in));
+            return PreDispatchingFilterResult.builder()
+                    .withSuccess(verified)
+                    .withMessage(String.format("Token verification result is: %s", verified))
+                    .build();
+        } catch (ClaimsException e) {
+            return PreDispatchingFilterResult.builder()
+                    .withSuccess(false)
+                    .withMessage("Token could not be parsed!" + e.getMessage())
+                    .build();
+        }
+    }
+
+    /**
+     * @return {@link #ORDER}
+     */
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+}
@@ -2,12 +2,16 @@ package de.fraunhofer.isst.ids.framework.messaging.handling;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.Part;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 
 import de.fraunhofer.iais.eis.DynamicAttributeTokenBuilder;
 import de.fraunhofer.iais.eis.Message;
@@ -17,11 +21,13 @@ import de.fraunhofer.iais.eis.TokenFormat;
 import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
 import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
 import de.fraunhofer.isst.ids.framework.messaging.model.filters.PreProcessingException;
+import de.fraunhofer.isst.ids.framework.messaging.model.responses.MessageResponse;
 import de.fraunhofer.isst.ids.framework.util.IDSUtils;
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -40,17 +46,48 @@ public class IDSController {
     static String HEADER_MULTIPART_NAME = "header";
     static String PAYLOAD_MULTIPART_NAME = "payload";
 
+    /**
+     * Default maximum size of the header part in bytes.
+     */
+    public static final int DEFAULT_MAX_HEADER_BYTES = 262144;
+
+    /**
+     * Buffers up to this size are returned to the pool after reading a header.
+     */
+    static int POOLED_BUFFER_BYTES = 65536;
+
+    /**
+     * Maximum number of pooled header buffers, shared by all request threads.
+     */
+    static int HEADER_BUFFER_POOL_SIZE = 32;
+
+    /**
+     * Pool of buffers for reading headers. A bounded queue instead of a ThreadLocal: buffers of idle or finished
+     * request threads are reused by others and are not kept alive with the thread (or the web application
+     * classloader) by a thread pool of the servlet container.
+     */
+    static BlockingQueue<byte[]> HEADER_BUFFERS = new ArrayBlockingQueue<>(HEADER_BUFFER_POOL_SIZE);
+
     MessageDispatcher messageDispatcher;
     ConfigurationContainer configurationContainer;
     Serializer serializer;
+    int maxHeaderBytes;
 
-    @Autowired
     public IDSController(final MessageDispatcher messageDispatcher,
                          final Serializer serializer,
                          final ConfigurationContainer configurationContainer) {
+        this(messageDispatcher, serializer, configurationContainer, DEFAULT_MAX_HEADER_BYTES);
+    }
+
+    @Autowired
+    public IDSController(final MessageDispatcher messageDispatcher,
+                         final Serializer serializer,
+                         final ConfigurationContainer configurationContainer,
+                         @Value("${ids.messaging.header.max.bytes:262144}") final int maxHeaderBytes) {
         this.messageDispatcher = messageDispatcher;
         this.serializer = serializer;
         this.configurationContainer = configurationContainer;
+        this.maxHeaderBytes = maxHeaderBytes;
     }
 
     /**
@@ -73,51 +110,162 @@ public class IDSController {
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(createDefaultErrorMessage(RejectionReason.MALFORMED_MESSAGE, "Header was missing!"));
             }
 
-            String input;
+            final var requestHeader = readHeader(headerPart);
+
             if (log.isDebugEnabled()) {
-                log.debug("parsing header of incoming message");
+                log.debug("hand the incoming message to the message dispatcher!");
             }
-            try (var scanner = new Scanner(headerPart.getInputStream(), StandardCharsets.UTF_8.name())) {
-                input = scanner.useDelimiter("\\A").next();
+            final var response = this.messageDispatcher.process(requestHeader, payloadPart == null ? null : payloadPart.getInputStream()); //pass null if payloadPart is null, else pass it as inputStream
+
+            return createResponse(response);
+        } catch (PreProcessingException | IOException | ServletException e) {
+            return createErrorResponse(e);
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #handleIDSMessage(HttpServletRequest)}, used if ids.messaging.async is enabled.
+     * Header parsing and PreDispatchingFilters run in the servlet thread. The response is sent when the
+     * {@link de.fraunhofer.isst.ids.framework.messaging.model.messages.AsyncMessageHandler} completes,
+     * the servlet thread is released in the meantime (Servlet async processing).
+     *
+     * @param request incoming http request
+     * @return future completed with the multipart MultivalueMap containing ResponseMessage header and some payload
+     */
+    public CompletableFuture<ResponseEntity<MultiValueMap<String, Object>>> handleIDSMessageAsync(final HttpServletRequest request) {
+        try {
+            final var headerPart = request.getPart(HEADER_MULTIPART_NAME);
+            final var payloadPart = request.getPart(PAYLOAD_MULTIPART_NAME);
+
+            if (headerPart == null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("header or payload of incoming message were empty!");
+                }
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(createDefaultErrorMessage(RejectionReason.MALFORMED_MESSAGE, "Header was missing!")));
             }
 
-            // Deserialize JSON-LD headerPart to its RequestMessage.class
-            final var requestHeader = serializer.deserialize(input, Message.class);
+            final var requestHeader = readHeader(headerPart);
 
             if (log.isDebugEnabled()) {
                 log.debug("hand the incoming message to the message dispatcher!");
             }
-            final var response = this.messageDispatcher.process(requestHeader, payloadPart == null ? null : payloadPart.getInputStream()); //pass null if payloadPart is null, else pass it as inputStream
+            return this.messageDispatcher.processAsync(requestHeader, payloadPart == null ? null : payloadPart.getInputStream())
+                    .thenApply(response -> {
+                        try {
+                            return createResponse(response);
+                        } catch (IOException e) {
+                            return createErrorResponse(e);
+                        }
+                    })
+                    .toCompletableFuture();
+        } catch (PreProcessingException | IOException | ServletException e) {
+            return CompletableFuture.completedFuture(createErrorResponse(e));
+        }
+    }
 
-            //get Response as MultiValueMap
-            final var responseAsMap = createMultiValueMap(response.createMultipartMap(serializer));
+    /**
+     * Read and deserialize the header part of an incoming message. The header is read into a pooled buffer,
+     * reading stops as soon as the header exceeds the maximum size.
+     *
+     * @param headerPart the header part
+     * @return the header as IDS Message
+     * @throws IOException if the header cannot be read or deserialized
+     * @throws HeaderTooLargeException if the header exceeds the maximum size
+     */
+    private Message readHeader(final Part headerPart) throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("parsing header of incoming message");
+        }
+        if (headerPart.getSize() > maxHeaderBytes) {
+            throw new HeaderTooLargeException(maxHeaderBytes);
+        }
 
-            // return the ResponseEntity as Multipart content with created MultiValueMap
-            if (log.isDebugEnabled()) {
-                log.debug("sending response with status OK (200)");
+        final var pooled = HEADER_BUFFERS.poll();
+        var buffer = pooled != null ? pooled : new byte[8192];
+        final String header;
+        try {
+            var length = 0;
+            try (var in = headerPart.getInputStream()) {
+                while (true) {
+                    if (length == buffer.length) {
+                        if (length > maxHeaderBytes) {
+                            throw new HeaderTooLargeException(maxHeaderBytes);
+                        }
+                        //grow up to one byte over the limit, to detect oversized headers
+                        buffer = Arrays.copyOf(buffer, (int) Math.min(buffer.length * 2L, maxHeaderBytes + 1L));
+                    }
+                    final var read = in.read(buffer, length, buffer.length - length);
+                    if (read < 0) {
+                        break;
+                    }
+                    length += read;
+                }
+            }
+            if (length > maxHeaderBytes) {
+                throw new HeaderTooLargeException(maxHeaderBytes);
             }
-            return ResponseEntity
-                    .status(HttpStatus.OK)
-                    .contentType(MediaType.MULTIPART_FORM_DATA)
-                    .body(responseAsMap);
+            header = new String(buffer, 0, length, StandardCharsets.UTF_8);
+        } finally {
+            //larger buffers are left to the garbage collector, the pool drops buffers if it is full
+            if (buffer.length <= POOLED_BUFFER_BYTES) {
+                HEADER_BUFFERS.offer(buffer);
+            }
+        }
 
-        } catch (PreProcessingException e) {
+        // Deserialize JSON-LD headerPart to its RequestMessage.class (the Serializer only accepts Strings)
+        return serializer.deserialize(header, Message.class);
+    }
+
+    /**
+     * Create the multipart response for the MessageResponse of a handler.
+     *
+     * @param response the MessageResponse
+     * @return ResponseEntity with status OK and the multipart response
+     * @throws IOException if the response cannot be serialized
+     */
+    private ResponseEntity<MultiValueMap<String, Object>> createResponse(final MessageResponse response) throws IOException {
+        //get Response as MultiValueMap
+        final var responseAsMap = createMultiValueMap(response.createMultipartMap(serializer));
+
+        // return the ResponseEntity as Multipart content with created MultiValueMap
+        if (log.isDebugEnabled()) {
+            log.debug("sending response with status OK (200)");
+        }
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(responseAsMap);
+    }
+
+    /**
+     * Create the rejection for an exception while handling an incoming message.
+     *
+     * @param exception a PreProcessingException, IOException (HeaderTooLargeException) or ServletException
+     * @return ResponseEntity with the matching status and RejectionMessage
+     */
+    private ResponseEntity<MultiValueMap<String, Object>> createErrorResponse(final Exception exception) {
+        if (exception instanceof PreProcessingException) {
             if (log.isErrorEnabled()) {
-                log.error("Error during pre-processing with a PreDispatchingFilter!", e);
+                log.error("Error during pre-processing with a PreDispatchingFilter!", exception);
             }
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(createDefaultErrorMessage(RejectionReason.BAD_PARAMETERS, String.format("Error during preprocessing: %s", e.getMessage())));
-        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(createDefaultErrorMessage(RejectionReason.BAD_PARAMETERS, String.format("Error during preprocessing: %s", exception.getMessage())));
+        } else if (exception instanceof HeaderTooLargeException) {
+            if (log.isWarnEnabled()) {
+                log.warn(exception.getMessage());
+            }
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(createDefaultErrorMessage(RejectionReason.MALFORMED_MESSAGE, exception.getMessage()));
+        } else if (exception instanceof IOException) {
             if (log.isWarnEnabled()) {
                 log.warn("incoming message could not be parsed!");
-                log.warn(e.getMessage(), e);
+                log.warn(exception.getMessage(), exception);
             }
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(createDefaultErrorMessage(RejectionReason.MALFORMED_MESSAGE, "Could not parse incoming message!"));
-        } catch (ServletException e) {
+        } else {
             if (log.isWarnEnabled()) {
                 log.warn("incoming request was not multipart!");
-                log.warn(e.getMessage(), e);
+                log.warn(exception.getMessage(), exception);
             }
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(createDefaultErrorMessage(RejectionReason.INTERNAL_RECIPIENT_ERROR, String.format("Could not read incoming request! Error: %s", e.getMessage())));
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(createDefaultErrorMessage(RejectionReason.INTERNAL_RECIPIENT_ERROR, String.format("Could not read incoming request! Error: %s", exception.getMessage())));
         }
     }
 
@@ -171,4 +319,15 @@ public class IDSController {
             return null;
         }
     }
+
+    /**
+     * Thrown if the header part of an incoming message exceeds the maximum size.
+     */
+    static class HeaderTooLargeException extends IOException {
+        static final long serialVersionUID = 42L;
+
+        HeaderTooLargeException(final int maxHeaderBytes) {
+            super(String.format("Header exceeds the maximum size of %d bytes!", maxHeaderBytes));
+        }
+    }
 }
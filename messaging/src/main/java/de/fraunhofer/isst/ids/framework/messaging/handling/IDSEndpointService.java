@@ -6,6 +6,7 @@ import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -22,6 +23,7 @@ public class IDSEndpointService {
 
     IDSController idsController;
     RequestMappingHandlerMapping requestMappingHandlerMapping;
+    boolean async;
 
     /**
      * Use <code>/api/ids/data</code> and <code>/api/ids/infrastructure</code> routes as default mappings.
@@ -29,11 +31,26 @@ public class IDSEndpointService {
      * @param idsController the {@link IDSController} which will be mapped
      * @param requestMappingHandlerMapping for managing Springs http route mappings
      */
-    @Autowired
     public IDSEndpointService(final IDSController idsController,
                               final RequestMappingHandlerMapping requestMappingHandlerMapping) {
+        this(idsController, requestMappingHandlerMapping, false);
+    }
+
+    /**
+     * Use <code>/api/ids/data</code> and <code>/api/ids/infrastructure</code> routes as default mappings.
+     *
+     * @param idsController the {@link IDSController} which will be mapped
+     * @param requestMappingHandlerMapping for managing Springs http route mappings
+     * @param async true to map the routes to {@link IDSController#handleIDSMessageAsync(HttpServletRequest)},
+     *              which releases the servlet thread while an AsyncMessageHandler works
+     */
+    @Autowired
+    public IDSEndpointService(final IDSController idsController,
+                              final RequestMappingHandlerMapping requestMappingHandlerMapping,
+                              @Value("${ids.messaging.async:false}") final boolean async) {
         this.idsController = idsController;
         this.requestMappingHandlerMapping = requestMappingHandlerMapping;
+        this.async = async;
         if (log.isDebugEnabled()) {
             log.debug("Adding default mappings");
         }
@@ -53,7 +70,8 @@ public class IDSEndpointService {
 
         final var requestMappingInfo = getRequestMappingInfo(url);
         try {
-            requestMappingHandlerMapping.registerMapping(requestMappingInfo, idsController, IDSController.class.getDeclaredMethod("handleIDSMessage", HttpServletRequest.class));
+            final var method = async ? "handleIDSMessageAsync" : "handleIDSMessage";
+            requestMappingHandlerMapping.registerMapping(requestMappingInfo, idsController, IDSController.class.getDeclaredMethod(method, HttpServletRequest.class));
         } catch (NoSuchMethodException e) {
             //cannot happen, method exists
             if (log.isErrorEnabled()) {
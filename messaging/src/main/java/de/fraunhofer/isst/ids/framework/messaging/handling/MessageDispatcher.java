@@ -1,21 +1,30 @@
 package de.fraunhofer.isst.ids.framework.messaging.handling;
 
 import java.io.InputStream;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import de.fraunhofer.iais.eis.ConnectorDeployMode;
 import de.fraunhofer.iais.eis.Message;
 import de.fraunhofer.iais.eis.RejectionReason;
 import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
-import de.fraunhofer.isst.ids.framework.daps.ClaimsException;
 import de.fraunhofer.isst.ids.framework.daps.DapsPublicKeyProvider;
 import de.fraunhofer.isst.ids.framework.daps.DapsValidator;
-import de.fraunhofer.isst.ids.framework.daps.DapsVerifier;
 import de.fraunhofer.isst.ids.framework.messaging.model.filters.PreDispatchingFilter;
 import de.fraunhofer.isst.ids.framework.messaging.model.filters.PreDispatchingFilterResult;
 import de.fraunhofer.isst.ids.framework.messaging.model.filters.PreProcessingException;
+import de.fraunhofer.isst.ids.framework.messaging.model.messages.AsyncMessageHandler;
 import de.fraunhofer.isst.ids.framework.messaging.model.messages.MessageHandler;
 import de.fraunhofer.isst.ids.framework.messaging.model.messages.MessageHandlingException;
 import de.fraunhofer.isst.ids.framework.messaging.model.messages.MessagePayloadImpl;
@@ -23,6 +32,7 @@ import de.fraunhofer.isst.ids.framework.messaging.model.responses.ErrorResponse;
 import de.fraunhofer.isst.ids.framework.messaging.model.responses.MessageResponse;
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -35,9 +45,11 @@ import lombok.extern.slf4j.Slf4j;
 public class MessageDispatcher {
 
     ObjectMapper objectMapper;
-    List<PreDispatchingFilter> preDispatchingFilters;
+    @NonFinal
+    volatile FilterChain filterChain;
     RequestHandlerResolver requestHandlerResolver;
     ConfigurationContainer configurationContainer;
+    Executor filterExecutor;
 
     /**
      * Create a MessageDispatcher.
@@ -51,39 +63,60 @@ public class MessageDispatcher {
                              final RequestHandlerResolver requestHandlerResolver,
                              final DapsPublicKeyProvider provider,
                              final ConfigurationContainer configurationContainer) {
+        this(objectMapper, requestHandlerResolver, new DapsValidator(provider), configurationContainer);
+    }
+
+    /**
+     * Create a MessageDispatcher.
+     *
+     * @param objectMapper a jackson objectmapper for (de)serializing objects
+     * @param requestHandlerResolver resolver for finding the fitting {@link MessageHandler} for the incoming Message
+     * @param dapsValidator the validator checking (and caching) the DAT of incoming Messages
+     * @param configurationContainer the connector configuration
+     */
+    public MessageDispatcher(final ObjectMapper objectMapper,
+                             final RequestHandlerResolver requestHandlerResolver,
+                             final DapsValidator dapsValidator,
+                             final ConfigurationContainer configurationContainer) {
+        this(objectMapper, requestHandlerResolver, dapsValidator, configurationContainer, null);
+    }
+
+    /**
+     * Create a MessageDispatcher.
+     *
+     * @param objectMapper a jackson objectmapper for (de)serializing objects
+     * @param requestHandlerResolver resolver for finding the fitting {@link MessageHandler} for the incoming Message
+     * @param dapsValidator the validator checking (and caching) the DAT of incoming Messages
+     * @param configurationContainer the connector configuration
+     * @param filterExecutor executor for running independent PreDispatchingFilters concurrently,
+     *                       null to run all filters in the calling thread
+     */
+    public MessageDispatcher(final ObjectMapper objectMapper,
+                             final RequestHandlerResolver requestHandlerResolver,
+                             final DapsValidator dapsValidator,
+                             final ConfigurationContainer configurationContainer,
+                             final Executor filterExecutor) {
         this.objectMapper = objectMapper;
+        this.filterExecutor = filterExecutor;
         this.requestHandlerResolver = requestHandlerResolver;
         this.configurationContainer = configurationContainer;
-        preDispatchingFilters = new LinkedList<>();
+        this.filterChain = new FilterChain(List.of());
 
         //add DAT verification as PreDispatchingFilter
-        registerPreDispatchingAction(in -> {
-            if (configurationContainer.getConfigModel().getConnectorDeployMode() == ConnectorDeployMode.TEST_DEPLOYMENT) {
-                return PreDispatchingFilterResult.successResult("ConnectorDeployMode is Test. Skipping Token verification!");
-            }
-
-            try {
-                final var verified = DapsVerifier.verify(DapsValidator.getClaims(in, provider.providePublicKey()));
-                return PreDispatchingFilterResult.builder()
-                        .withSuccess(verified)
-                        .withMessage(String.format("Token verification result is: %s", verified))
-                        .build();
-            } catch (ClaimsException e) {
-                return PreDispatchingFilterResult.builder()
-                        .withSuccess(false)
-                        .withMessage("Token could not be parsed!" + e.getMessage())
-                        .build();
-            }
-        });
+        registerPreDispatchingAction(new DatVerificationFilter(dapsValidator, configurationContainer));
     }
 
     /**
-     * Register a new PreDispatchingFilter which will be used to filter incoming messages.
+     * Register a new PreDispatchingFilter which will be used to filter incoming messages. The filters are sorted
+     * by {@link PreDispatchingFilter#getOrder()}, filters with the same order keep their registration order.
      *
      * @param preDispatchingFilter a new {@link PreDispatchingFilter} that should be added to the list of filters
      */
-    public void registerPreDispatchingAction(final PreDispatchingFilter preDispatchingFilter) {
-        this.preDispatchingFilters.add(preDispatchingFilter);
+    public synchronized void registerPreDispatchingAction(final PreDispatchingFilter preDispatchingFilter) {
+        final var filters = new ArrayList<>(filterChain.filters);
+        filters.add(preDispatchingFilter);
+        filters.sort(Comparator.comparingInt(PreDispatchingFilter::getOrder));
+        this.filterChain = new FilterChain(filters);
     }
 
     /**
@@ -96,27 +129,103 @@ public class MessageDispatcher {
      * @return the {@link MessageResponse} that is returned by the specified {@link MessageHandler} for the type of the incoming Message
      * @throws PreProcessingException if an error occurs in a PreDispatchingFilter
      */
-    @SuppressWarnings("unchecked")
     public <R extends Message> MessageResponse process(final R header, final InputStream payload) throws PreProcessingException {
-        final var connectorId = configurationContainer.getConnector().getId();
-        final var modelVersion = configurationContainer.getConnector().getOutboundModelVersion();
-        //apply all preDispatchingFilters to the message
-        for (final var preDispatchingFilter : this.preDispatchingFilters) {
+        final var rejection = applyPreDispatchingFilters(header);
+        if (rejection != null) {
+            return rejection;
+        }
+
+        // Returns the MessageHandler of a given MessageType of the header-part.
+        // The MessageType is a subtype of RequestMessage.class from Infomodel.
+        final var resolvedHandler = requestHandlerResolver.resolveHandler(header.getClass());
+        return handle(header, payload, resolvedHandler.orElse(null));
+    }
+
+    /**
+     * Apply the preDispatchingFilters to the message (in the calling thread). If it wasn't filtered: find the
+     * {@link MessageHandler} for its type. An {@link AsyncMessageHandler} handles the message asynchronously, other
+     * handlers synchronously (the returned stage is already completed then).
+     * Failures are handled like in {@link #process(Message, InputStream)}: a {@link MessageHandlingException} is turned
+     * into a rejection, runtime exceptions of the handler complete the stage exceptionally.
+     *
+     * @param header header of the incoming Message (RequestMessage implementation)
+     * @param payload payload of the incoming Message
+     * @param <R> a subtype of RequestMessage
+     * @return stage completed with the {@link MessageResponse} of the {@link MessageHandler} for the type of the incoming Message
+     * @throws PreProcessingException if an error occurs in a PreDispatchingFilter
+     */
+    @SuppressWarnings("unchecked")
+    public <R extends Message> CompletionStage<MessageResponse> processAsync(final R header, final InputStream payload) throws PreProcessingException {
+        final var rejection = applyPreDispatchingFilters(header);
+        if (rejection != null) {
+            return CompletableFuture.completedFuture(rejection);
+        }
+
+        final var resolvedHandler = requestHandlerResolver.resolveHandler(header.getClass()).orElse(null);
+        if (!(resolvedHandler instanceof AsyncMessageHandler)) {
+            return CompletableFuture.completedFuture(handle(header, payload, resolvedHandler));
+        }
+
+        CompletionStage<MessageResponse> stage;
+        try {
+            final var handler = (AsyncMessageHandler<R>) resolvedHandler;
+            stage = handler.handleMessageAsync(header, new MessagePayloadImpl(payload, objectMapper));
+        } catch (RuntimeException e) {
+            stage = CompletableFuture.failedFuture(e);
+        }
+        return stage.exceptionally(e -> {
+            final var cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RuntimeException) {
+                //like a runtime exception thrown by a synchronous handler, it is not turned into a rejection
+                throw cause instanceof CompletionException ? (CompletionException) cause : new CompletionException(cause);
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("The message handler completed exceptionally!");
+                log.debug(cause.getMessage(), cause);
+            }
+            return handlingError(header);
+        });
+    }
+
+    /**
+     * Apply all preDispatchingFilters to the message.
+     *
+     * @param header header of the incoming Message
+     * @return the rejection if a filter rejected the message, null if all filters accepted it
+     * @throws PreProcessingException if an error occurs in a PreDispatchingFilter
+     */
+    private MessageResponse applyPreDispatchingFilters(final Message header) throws PreProcessingException {
+        //apply all preDispatchingFilters for the type of the message, stage by stage
+        for (final var stage : this.filterChain.forType(header.getClass())) {
+            final var rejection = stage.length > 1 && filterExecutor != null
+                    ? applyConcurrently(stage, header)
+                    : applySequentially(stage, header);
+            if (rejection != null) {
+                return rejection;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Apply the filters of a stage one after another in the calling thread.
+     *
+     * @param stage the filters
+     * @param header header of the incoming Message
+     * @return the first rejection, null if all filters accepted the message
+     * @throws PreProcessingException if an error occurs in a PreDispatchingFilter
+     */
+    private MessageResponse applySequentially(final PreDispatchingFilter[] stage, final Message header) throws PreProcessingException {
+        for (final var preDispatchingFilter : stage) {
             if (log.isDebugEnabled()) {
                 log.debug("Applying a preDispatchingFilter");
             }
+            final PreDispatchingFilterResult result;
             try {
-                final var result = preDispatchingFilter.process(header);
-                if (!result.isSuccess()) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("A preDispatchingFilter failed!");
-                    }
-                    if (log.isErrorEnabled()) {
-                        log.error(result.getMessage(), result.getError());
-                    }
-
-                    return ErrorResponse.withDefaultHeader(RejectionReason.MALFORMED_MESSAGE, result.getMessage(), connectorId, modelVersion, header.getId());
-                }
+                result = preDispatchingFilter.process(header);
             } catch (Exception e) {
                 if (log.isDebugEnabled()) {
                     log.debug("A preDispatchingFilter threw an exception!");
@@ -124,24 +233,100 @@ public class MessageDispatcher {
                 }
                 throw new PreProcessingException(e);
             }
+            final var rejection = rejectionFor(result, header);
+            if (rejection != null) {
+                return rejection;
+            }
         }
+        return null;
+    }
 
-        // Returns the MessageHandler of a given MessageType of the header-part.
-        // The MessageType is a subtype of RequestMessage.class from Infomodel.
-        final var resolvedHandler = requestHandlerResolver.resolveHandler(header.getClass());
+    /**
+     * Apply the independent filters of a stage concurrently on the filter executor. The first rejection or
+     * exception cancels the filters that are still running.
+     *
+     * @param stage the independent filters
+     * @param header header of the incoming Message
+     * @return the first rejection, null if all filters accepted the message
+     * @throws PreProcessingException if an error occurs in a PreDispatchingFilter
+     */
+    private MessageResponse applyConcurrently(final PreDispatchingFilter[] stage, final Message header) throws PreProcessingException {
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Applying %d independent preDispatchingFilters concurrently", stage.length));
+        }
+        final var completionService = new ExecutorCompletionService<PreDispatchingFilterResult>(filterExecutor);
+        final var futures = new ArrayList<Future<PreDispatchingFilterResult>>(stage.length);
+        try {
+            for (final var preDispatchingFilter : stage) {
+                futures.add(completionService.submit(() -> preDispatchingFilter.process(header)));
+            }
+            for (var i = 0; i < stage.length; i++) {
+                final var rejection = rejectionFor(completionService.take().get(), header);
+                if (rejection != null) {
+                    return rejection;
+                }
+            }
+            return null;
+        } catch (ExecutionException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("A preDispatchingFilter threw an exception!");
+                log.debug(e.getCause().getMessage(), e.getCause());
+            }
+            throw new PreProcessingException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PreProcessingException(e);
+        } catch (RejectedExecutionException e) {
+            throw new PreProcessingException(e);
+        } finally {
+            //no-op for completed filters
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * @param result the result of a PreDispatchingFilter
+     * @param header header of the incoming Message
+     * @return the rejection if the filter rejected the message, else null
+     */
+    private MessageResponse rejectionFor(final PreDispatchingFilterResult result, final Message header) {
+        if (result.isSuccess()) {
+            return null;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("A preDispatchingFilter failed!");
+        }
+        if (log.isErrorEnabled()) {
+            log.error(result.getMessage(), result.getError());
+        }
+        return errorResponse(RejectionReason.MALFORMED_MESSAGE, result.getMessage(), header);
+    }
 
+    /**
+     * Let the resolved handler handle the message synchronously.
+     *
+     * @param header header of the incoming Message
+     * @param payload payload of the incoming Message
+     * @param resolvedHandler the handler for the type of the message, null if none exists
+     * @param <R> a subtype of RequestMessage
+     * @return the {@link MessageResponse} of the handler, or the matching rejection
+     */
+    @SuppressWarnings("unchecked")
+    private <R extends Message> MessageResponse handle(final R header,
+                                                       final InputStream payload,
+                                                       final MessageHandler<?> resolvedHandler) {
         // Checks if revolvedHandler is not null
-        if (resolvedHandler.isPresent()) {
+        if (resolvedHandler != null) {
             //if an handler exists, let the handle handle the message and return its response
             try {
-                final var handler = (MessageHandler<R>) resolvedHandler.get();
+                final var handler = (MessageHandler<R>) resolvedHandler;
                 return handler.handleMessage(header, new MessagePayloadImpl(payload, objectMapper));
             } catch (MessageHandlingException e) {
                 if (log.isDebugEnabled()) {
                     log.debug("The message handler threw an exception!");
                 }
 
-                return ErrorResponse.withDefaultHeader(RejectionReason.INTERNAL_RECIPIENT_ERROR, "Error while handling the request!", connectorId, modelVersion, header.getId());
+                return handlingError(header);
             }
         } else {
             if (log.isDebugEnabled()) {
@@ -149,7 +334,72 @@ public class MessageDispatcher {
             }
 
             //If no handler for the type exists, the message type isn't supported
-            return ErrorResponse.withDefaultHeader(RejectionReason.MESSAGE_TYPE_NOT_SUPPORTED, "No handler for provided message type was found!", connectorId, modelVersion, header.getId());
+            return errorResponse(RejectionReason.MESSAGE_TYPE_NOT_SUPPORTED, "No handler for provided message type was found!", header);
+        }
+    }
+
+    /**
+     * @param header header of the incoming Message
+     * @return the rejection for a message whose handler failed
+     */
+    private MessageResponse handlingError(final Message header) {
+        return errorResponse(RejectionReason.INTERNAL_RECIPIENT_ERROR, "Error while handling the request!", header);
+    }
+
+    /**
+     * Create a rejection for an incoming message.
+     *
+     * @param reason the rejection reason
+     * @param message the error message
+     * @param header header of the incoming Message
+     * @return ErrorResponse with the default header
+     */
+    private MessageResponse errorResponse(final RejectionReason reason, final String message, final Message header) {
+        final var connector = configurationContainer.getConnector();
+        return ErrorResponse.withDefaultHeader(reason, message, connector.getId(), connector.getOutboundModelVersion(), header.getId());
+    }
+
+    /**
+     * The sorted PreDispatchingFilters (not modified after construction), with a cache of the stages of filters
+     * applying to each message class. Registering a filter replaces the whole chain, cache included.
+     */
+    private static class FilterChain {
+        private final List<PreDispatchingFilter> filters;
+        private final Map<Class<?>, PreDispatchingFilter[][]> byType = new ConcurrentHashMap<>();
+
+        FilterChain(final List<PreDispatchingFilter> filters) {
+            this.filters = List.copyOf(filters);
+        }
+
+        PreDispatchingFilter[][] forType(final Class<?> messageType) {
+            return byType.computeIfAbsent(messageType, this::stages);
+        }
+
+        /**
+         * Group the filters applying to the type into stages: consecutive independent filters form one stage,
+         * every other filter is a stage of its own.
+         */
+        private PreDispatchingFilter[][] stages(final Class<?> messageType) {
+            final var stages = new ArrayList<PreDispatchingFilter[]>();
+            final var independent = new ArrayList<PreDispatchingFilter>();
+            for (final var filter : filters) {
+                if (filter.getSupportedMessageTypes().stream().noneMatch(supported -> supported.isAssignableFrom(messageType))) {
+                    continue;
+                }
+                if (filter.isIndependent()) {
+                    independent.add(filter);
+                    continue;
+                }
+                if (!independent.isEmpty()) {
+                    stages.add(independent.toArray(PreDispatchingFilter[]::new));
+                    independent.clear();
+                }
+                stages.add(new PreDispatchingFilter[]{filter});
+            }
+            if (!independent.isEmpty()) {
+                stages.add(independent.toArray(PreDispatchingFilter[]::new));
+            }
+            return stages.toArray(PreDispatchingFilter[][]::new);
         }
     }
 
@@ -1,9 +1,16 @@
 package de.fraunhofer.isst.ids.framework.messaging.handling;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
-import de.fraunhofer.isst.ids.framework.daps.DapsPublicKeyProvider;
+import de.fraunhofer.isst.ids.framework.daps.DapsValidator;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Component;
 
@@ -14,22 +21,45 @@ import org.springframework.stereotype.Component;
 @Component
 public class MessageDispatcherProvider {
 
+    private ExecutorService filterExecutor;
+
     /**
      * Make use of autowiring to get the parameters for the MessageDispatchers constructor and
      * create an Instance of MessageDispatcher with them.
      *
      * @param objectMapper for parsing objects from json
-     * @param provider providing DAPS public key for checking DAT Tokens
+     * @param dapsValidator validator for checking DAT Tokens
      * @param configurationContainer container for current configuration
      * @param resolver resolver for finding the right handler for infomodel {@link de.fraunhofer.iais.eis.Message}
+     * @param filterThreads number of threads running independent PreDispatchingFilters concurrently, 0 to run all
+     *                      filters in the request thread
      * @return MessageDispatcher as Spring Bean
      */
     @Bean
     public MessageDispatcher provideMessageDispatcher(final ObjectMapper objectMapper,
                                                       final RequestHandlerResolver resolver,
-                                                      final DapsPublicKeyProvider provider,
-                                                      final ConfigurationContainer configurationContainer) {
+                                                      final DapsValidator dapsValidator,
+                                                      final ConfigurationContainer configurationContainer,
+                                                      @Value("${ids.messaging.filter.threads:4}") final int filterThreads) {
+        if (filterThreads > 0) {
+            final var counter = new AtomicInteger();
+            filterExecutor = Executors.newFixedThreadPool(filterThreads, runnable -> {
+                final var thread = new Thread(runnable, "pre-dispatching-filter-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
 
-        return new MessageDispatcher(objectMapper, resolver, provider, configurationContainer);
+        return new MessageDispatcher(objectMapper, resolver, dapsValidator, configurationContainer, filterExecutor);
+    }
+
+    /**
+     * Stop the threads running independent PreDispatchingFilters.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (filterExecutor != null) {
+            filterExecutor.shutdownNow();
+        }
     }
 }
@@ -1,31 +1,62 @@
 package de.fraunhofer.isst.ids.framework.messaging.handling;
 
-import java.util.Arrays;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import de.fraunhofer.iais.eis.Message;
 import de.fraunhofer.isst.ids.framework.messaging.model.messages.MessageHandler;
 import de.fraunhofer.isst.ids.framework.messaging.model.messages.SupportedMessageType;
-import lombok.Data;
-import lombok.RequiredArgsConstructor;
+import de.fraunhofer.isst.ids.framework.messaging.model.messages.SupportedMessageTypes;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
 
 /**
  * Resolver that uses the Spring dependency injection mechanism to find the matching message handler.
+ *
+ * The handlers are collected once when the application context is refreshed, a handler can support several message
+ * types. A message class is resolved through its type hierarchy (a handler for an interface matches all
+ * implementations), the result is cached per message class, so dispatching does not depend on the number of handlers.
  */
+@Slf4j
 @Service
-@RequiredArgsConstructor(onConstructor = @__(@Autowired))
-public class SpringRequestHandlerResolver implements RequestHandlerResolver {
+public class SpringRequestHandlerResolver implements RequestHandlerResolver, ApplicationListener<ContextRefreshedEvent> {
 
     private final ApplicationContext appContext;
+    private volatile Registry registry;
 
-    @Data
-    @RequiredArgsConstructor
-    private static class Tuple<K, V> {
-        final K key;
-        final V value;
+    /**
+     * Create a SpringRequestHandlerResolver.
+     *
+     * @param appContext the application context containing the MessageHandler beans
+     */
+    @Autowired
+    public SpringRequestHandlerResolver(final ApplicationContext appContext) {
+        this.appContext = appContext;
+    }
+
+    /**
+     * Rebuild the handler registry when the application context is refreshed.
+     *
+     * @param event the refresh event
+     */
+    @Override
+    public void onApplicationEvent(final ContextRefreshedEvent event) {
+        if (event.getApplicationContext() == appContext) {
+            this.registry = buildRegistry();
+        }
     }
 
     /**
@@ -38,12 +69,91 @@ public class SpringRequestHandlerResolver implements RequestHandlerResolver {
     @SuppressWarnings("unchecked")
     @Override
     public <R extends Message> Optional<MessageHandler<R>> resolveHandler(final Class<R> messageType) {
-        //TODO: check if still one handler can support multiple message tpyes (SupportedMessageType)
-        return Arrays.stream(appContext.getBeanNamesForAnnotation(SupportedMessageType.class))
-                .flatMap(s -> Optional.ofNullable(appContext.findAnnotationOnBean(s, SupportedMessageType.class)).stream().map(msg -> new Tuple<>(s, msg)))
-                .filter(t -> t.value.value().equals(messageType))
-                .<MessageHandler<R>>map(t -> appContext.getBean(t.key, MessageHandler.class))
-                .findFirst();
+        var current = this.registry;
+        if (current == null) {
+            //used before the context was refreshed
+            current = buildRegistry();
+            this.registry = current;
+        }
+        return current.resolve(messageType).map(handler -> (MessageHandler<R>) handler);
+    }
+
+    /**
+     * Collect all beans annotated with {@link SupportedMessageType} (also repeated) by supported message type.
+     *
+     * @return the registry of the current handlers
+     */
+    private Registry buildRegistry() {
+        final var beanNames = new LinkedHashSet<String>();
+        beanNames.addAll(List.of(appContext.getBeanNamesForAnnotation(SupportedMessageType.class)));
+        beanNames.addAll(List.of(appContext.getBeanNamesForAnnotation(SupportedMessageTypes.class)));
+
+        final var handlers = new IdentityHashMap<Class<? extends Message>, MessageHandler<?>>();
+        for (final var beanName : beanNames) {
+            final var beanType = appContext.getType(beanName);
+            if (beanType == null) {
+                continue;
+            }
+            final var annotations = AnnotatedElementUtils.findMergedRepeatableAnnotations(
+                    ClassUtils.getUserClass(beanType), SupportedMessageType.class, SupportedMessageTypes.class);
+            for (final var annotation : annotations) {
+                final var handler = appContext.getBean(beanName, MessageHandler.class);
+                for (final var messageType : annotation.value()) {
+                    final var previous = handlers.putIfAbsent(messageType, handler);
+                    if (previous != null && previous != handler && log.isWarnEnabled()) {
+                        log.warn(String.format("Multiple handlers for %s, using %s",
+                                               messageType.getSimpleName(), previous.getClass().getSimpleName()));
+                    }
+                }
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Registered message handlers for %d message types", handlers.size()));
+        }
+        return new Registry(handlers);
+    }
+
+    /**
+     * Handlers by supported message type (not modified after construction), with a cache of the handler resolved for
+     * each message class. A refresh replaces the whole registry, so cached results (and the message classes they
+     * reference) are dropped with it.
+     */
+    private static class Registry {
+        private final Map<Class<? extends Message>, MessageHandler<?>> handlers;
+        private final Map<Class<?>, Optional<MessageHandler<?>>> resolved = new ConcurrentHashMap<>();
+
+        Registry(final IdentityHashMap<Class<? extends Message>, MessageHandler<?>> handlers) {
+            this.handlers = Collections.unmodifiableMap(handlers);
+        }
+
+        Optional<MessageHandler<?>> resolve(final Class<?> messageType) {
+            return resolved.computeIfAbsent(messageType, this::lookup);
+        }
+
+        /**
+         * Search the type hierarchy breadth first: the class itself, then its superclass and interfaces.
+         */
+        private Optional<MessageHandler<?>> lookup(final Class<?> messageType) {
+            final var queue = new ArrayDeque<Class<?>>();
+            final var visited = new HashSet<Class<?>>();
+            queue.add(messageType);
+            while (!queue.isEmpty()) {
+                final var type = queue.poll();
+                if (!visited.add(type)) {
+                    continue;
+                }
+                final var handler = handlers.get(type);
+                if (handler != null) {
+                    return Optional.of(handler);
+                }
+                if (type.getSuperclass() != null) {
+                    queue.add(type.getSuperclass());
+                }
+                queue.addAll(List.of(type.getInterfaces()));
+            }
+            return Optional.empty();
+        }
     }
 
 }
@@ -1,10 +1,16 @@
 package de.fraunhofer.isst.ids.framework.messaging.model.filters;
 
+import java.util.List;
+
 import de.fraunhofer.iais.eis.Message;
 
 /**
  * A filter that can be used for processing the message before it gets to the MessageDispatcher.
  * (can be used to filter and reject some messages after custom criteria before they get to the MessageHandler)
+ *
+ * Filters run ordered by {@link #getOrder()}, filters with the same order in registration order. The first rejection
+ * stops the chain, so cheap filters should have a lower order than expensive ones (the DAT verification has order 0).
+ * Consecutive filters marked as {@link #isIndependent()} can run concurrently.
  */
 @FunctionalInterface
 public interface PreDispatchingFilter {
@@ -17,4 +23,33 @@ public interface PreDispatchingFilter {
      * @throws PreProcessingException if an error occurs while processing the message
      */
     PreDispatchingFilterResult process(Message in) throws PreProcessingException;
+
+    /**
+     * Getter for the order of the filter, filters with lower order run first.
+     *
+     * @return the order, 0 by default (after the DAT verification, negative values run before it)
+     */
+    default int getOrder() {
+        return 0;
+    }
+
+    /**
+     * Getter for the message types the filter is applied to (including their subtypes).
+     *
+     * @return the supported message types, all messages by default
+     */
+    default List<Class<? extends Message>> getSupportedMessageTypes() {
+        return List.of(Message.class);
+    }
+
+    /**
+     * Independent filters neither depend on nor affect the results of other filters (e.g. lookups in external
+     * services). Consecutive independent filters run concurrently if the MessageDispatcher has a filter executor,
+     * the first rejection cancels (interrupts) the others.
+     *
+     * @return true if the filter is independent, false by default
+     */
+    default boolean isIndependent() {
+        return false;
+    }
 }
@@ -0,0 +1,53 @@
+package de.fraunhofer.isst.ids.framework.messaging.model.messages;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+import de.fraunhofer.iais.eis.Message;
+import de.fraunhofer.isst.ids.framework.messaging.model.responses.MessageResponse;
+
+/**
+ * A MessageHandler that handles messages asynchronously, e.g. while waiting for backend systems. The
+ * {@link de.fraunhofer.isst.ids.framework.messaging.handling.MessageDispatcher} completes the request when the returned
+ * stage completes, without blocking a servlet thread (if asynchronous handling is enabled in the IDSEndpointService).
+ *
+ * @param <T> subtype of message supported by the message handler
+ */
+public interface AsyncMessageHandler<T extends Message> extends MessageHandler<T> {
+
+    /**
+     * Handle an incoming Message of type T asynchronously.
+     *
+     * @param queryHeader header part of the incoming Message (an instance of RequestMessage)
+     * @param payload payload of the Message (as MessagePayload, access with getUnderlyingInputStream())
+     * @return stage completed with the MessageResponse, or exceptionally with a {@link MessageHandlingException}
+     * (other exceptions are treated like runtime exceptions thrown by {@link #handleMessage(Message, MessagePayload)})
+     */
+    CompletionStage<MessageResponse> handleMessageAsync(T queryHeader, MessagePayload payload);
+
+    /**
+     * Handle the message synchronously by waiting for {@link #handleMessageAsync(Message, MessagePayload)}.
+     *
+     * @param queryHeader header part of the incoming Message (an instance of RequestMessage)
+     * @param payload payload of the Message (as MessagePayload, access with getUnderlyingInputStream())
+     * @return an instance of MessageResponse (BodyResponse, ErrorResponse,...)
+     * @throws MessageHandlingException if an error occurs while handling the incoming message
+     */
+    @Override
+    default MessageResponse handleMessage(final T queryHeader, final MessagePayload payload) throws MessageHandlingException {
+        try {
+            return handleMessageAsync(queryHeader, payload).toCompletableFuture().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof MessageHandlingException) {
+                throw (MessageHandlingException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new MessageHandlingException(e.getCause());
+        }
+    }
+}
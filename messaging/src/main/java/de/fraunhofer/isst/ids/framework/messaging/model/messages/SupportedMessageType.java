@@ -9,11 +9,15 @@ import java.lang.annotation.Target;
 import de.fraunhofer.iais.eis.Message;
 
 /**
- * This annotation specifies which Type of RequestMessage can be handled by a specific MessageHandler implementation.
+ * This annotation specifies which Types of RequestMessage can be handled by a specific MessageHandler implementation.
+ * A handler for an interface (e.g. ArtifactRequestMessage) also handles its implementations.
  */
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
 @Repeatable(value = SupportedMessageTypes.class)
 public @interface SupportedMessageType {
-    Class<? extends Message> value();
+    /**
+     * @return the message types handled by the annotated MessageHandler
+     */
+    Class<? extends Message>[] value();
 }
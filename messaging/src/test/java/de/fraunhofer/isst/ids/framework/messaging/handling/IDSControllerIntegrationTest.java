@@ -1,12 +1,27 @@
 package de.fraunhofer.isst.ids.framework.messaging.handling;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fraunhofer.iais.eis.ConfigurationModel;
 import de.fraunhofer.iais.eis.Connector;
+import de.fraunhofer.iais.eis.ConnectorDeployMode;
 import de.fraunhofer.iais.eis.DynamicAttributeTokenBuilder;
+import de.fraunhofer.iais.eis.Message;
 import de.fraunhofer.iais.eis.NotificationMessageBuilder;
+import de.fraunhofer.iais.eis.RejectionMessage;
+import de.fraunhofer.iais.eis.RejectionReason;
+import de.fraunhofer.iais.eis.RequestMessage;
 import de.fraunhofer.iais.eis.RequestMessageBuilder;
 import de.fraunhofer.iais.eis.ResponseMessage;
 import de.fraunhofer.iais.eis.ResponseMessageBuilder;
@@ -14,8 +29,12 @@ import de.fraunhofer.iais.eis.TokenFormat;
 import de.fraunhofer.iais.eis.ids.jsonld.Serializer;
 import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
 import de.fraunhofer.isst.ids.framework.daps.DapsTokenProvider;
+import de.fraunhofer.isst.ids.framework.daps.DapsValidator;
 import de.fraunhofer.isst.ids.framework.messaging.handling.model.TestPayload;
+import de.fraunhofer.isst.ids.framework.messaging.model.messages.AsyncMessageHandler;
+import de.fraunhofer.isst.ids.framework.messaging.model.messages.MessageHandlingException;
 import de.fraunhofer.isst.ids.framework.messaging.model.responses.BodyResponse;
+import de.fraunhofer.isst.ids.framework.messaging.model.responses.MessageResponse;
 import de.fraunhofer.isst.ids.framework.messaging.util.ResourceIDGenerator;
 import de.fraunhofer.isst.ids.framework.util.IDSUtils;
 import de.fraunhofer.isst.ids.framework.util.MultipartStringParser;
@@ -28,18 +47,25 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockPart;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
 import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
 
 import static de.fraunhofer.isst.ids.framework.messaging.handling.IDSControllerIntegrationTest.TestContextConfiguration;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -182,4 +208,129 @@ public class IDSControllerIntegrationTest {
         assertEquals(msgHeader.getId(), responseHeader.getCorrelationMessage());
     }
 
+    /**
+     * Test that the asynchronous handling completes with the response of an AsyncMessageHandler and handles its
+     * failures like the synchronous handling
+     */
+    @Test
+    public void testAsyncMessageHandler() throws Exception {
+        Mockito.when(configurationContainer.getConnector()).thenReturn(connector);
+        Mockito.when(connector.getId()).thenReturn(new URL("https://isst.fraunhofer.de/ids/dc967f79-643d-4780-9e8e-3ca4a75ba6a5").toURI());
+        Mockito.when(connector.getOutboundModelVersion()).thenReturn("1.0.3");
+        final var configModel = Mockito.mock(ConfigurationModel.class);
+        Mockito.when(configModel.getConnectorDeployMode()).thenReturn(ConnectorDeployMode.TEST_DEPLOYMENT);
+        Mockito.when(configurationContainer.getConfigModel()).thenReturn(configModel);
+
+        final var handlerResult = new AtomicReference<CompletableFuture<MessageResponse>>();
+        final AsyncMessageHandler<RequestMessage> handler = (header, payload) -> handlerResult.get();
+        final var resolver = Mockito.mock(RequestHandlerResolver.class);
+        Mockito.doReturn(Optional.of(handler)).when(resolver).resolveHandler(Mockito.any());
+        final var dispatcher = new MessageDispatcher(new ObjectMapper(), resolver, Mockito.mock(DapsValidator.class),
+                                                     configurationContainer);
+        final var controller = new IDSController(dispatcher, serializer, configurationContainer);
+
+        final var token = new DynamicAttributeTokenBuilder()
+                ._tokenFormat_(TokenFormat.JWT)
+                ._tokenValue_("Token")
+                .build();
+        final var msgHeader = new RequestMessageBuilder(ResourceIDGenerator.randomURI(IDSControllerIntegrationTest.class))
+                ._issuerConnector_(connector.getId())
+                ._issued_(IDSUtils.getGregorianNow())
+                ._securityToken_(token)
+                ._senderAgent_(connector.getId())
+                ._modelVersion_(connector.getOutboundModelVersion())
+                .build();
+        final var responseMessage = new ResponseMessageBuilder()
+                ._correlationMessage_(msgHeader.getId())
+                ._issuerConnector_(connector.getId())
+                ._issued_(IDSUtils.getGregorianNow())
+                ._securityToken_(token)
+                ._senderAgent_(connector.getId())
+                ._modelVersion_(connector.getOutboundModelVersion())
+                .build();
+
+        // the response is sent when the handler completes
+        handlerResult.set(new CompletableFuture<>());
+        final var pending = controller.handleIDSMessageAsync(request(msgHeader));
+        assertFalse(pending.isDone());
+        handlerResult.get().complete(BodyResponse.create(responseMessage, "async response"));
+        final var response = pending.get(10, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("async response", response.getBody().getFirst("payload"));
+
+        // a MessageHandlingException is rejected with the same reason as in the synchronous handling
+        handlerResult.set(CompletableFuture.failedFuture(new MessageHandlingException("handler failed")));
+        final var rejection = controller.handleIDSMessageAsync(request(msgHeader)).get(10, TimeUnit.SECONDS);
+        final var syncRejection = controller.handleIDSMessage(request(msgHeader));
+        for (final var entity : List.of(rejection, syncRejection)) {
+            final var rejectionHeader = serializer.deserialize((String) entity.getBody().getFirst("header"), RejectionMessage.class);
+            assertEquals(RejectionReason.INTERNAL_RECIPIENT_ERROR, rejectionHeader.getRejectionReason());
+        }
+
+        // a runtime exception is not turned into a rejection, in both variants
+        handlerResult.set(CompletableFuture.failedFuture(new IllegalStateException("handler failed")));
+        final var failed = controller.handleIDSMessageAsync(request(msgHeader));
+        final var exception = assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof IllegalStateException);
+        assertThrows(IllegalStateException.class, () -> controller.handleIDSMessage(request(msgHeader)));
+    }
+
+    /**
+     * Test that headers up to the maximum size are accepted and larger headers are rejected with MALFORMED_MESSAGE,
+     * whether the size is declared by the part or only detected while reading it
+     */
+    @Test
+    public void testHeaderSizeLimit() throws Exception {
+        Mockito.when(configurationContainer.getConnector()).thenReturn(connector);
+        Mockito.when(connector.getId()).thenReturn(new URL("https://isst.fraunhofer.de/ids/dc967f79-643d-4780-9e8e-3ca4a75ba6a5").toURI());
+        Mockito.when(connector.getOutboundModelVersion()).thenReturn("1.0.3");
+        final var msgHeader = new RequestMessageBuilder(ResourceIDGenerator.randomURI(IDSControllerIntegrationTest.class))
+                ._issuerConnector_(connector.getId())
+                ._issued_(IDSUtils.getGregorianNow())
+                ._securityToken_(new DynamicAttributeTokenBuilder()._tokenFormat_(TokenFormat.JWT)._tokenValue_("Token").build())
+                ._senderAgent_(connector.getId())
+                ._modelVersion_(connector.getOutboundModelVersion())
+                .build();
+        Mockito.when(messageDispatcher.process(Mockito.any(), Mockito.any())).thenReturn(BodyResponse.create(msgHeader, "accepted"));
+
+        // padded beyond the initial buffer size, so the buffer has to grow while reading
+        final var header = (serializer.serialize(msgHeader) + " ".repeat(20000)).getBytes(StandardCharsets.UTF_8);
+
+        final var underLimit = new IDSController(messageDispatcher, serializer, configurationContainer, header.length + 1);
+        final var accepted = underLimit.handleIDSMessage(headerRequest(header, header.length));
+        assertEquals(HttpStatus.OK, accepted.getStatusCode());
+        assertEquals("accepted", accepted.getBody().getFirst("payload"));
+
+        final var overLimit = new IDSController(messageDispatcher, serializer, configurationContainer, header.length - 1);
+        // size of the part unknown, detected while reading
+        assertMalformed(overLimit.handleIDSMessage(headerRequest(header, -1)));
+        // size of the part declared, rejected before reading
+        assertMalformed(overLimit.handleIDSMessage(headerRequest("{}".getBytes(StandardCharsets.UTF_8), header.length)));
+    }
+
+    private void assertMalformed(final ResponseEntity<MultiValueMap<String, Object>> response) throws IOException {
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        final var rejectionHeader = serializer.deserialize((String) response.getBody().getFirst("header"), RejectionMessage.class);
+        assertEquals(RejectionReason.MALFORMED_MESSAGE, rejectionHeader.getRejectionReason());
+    }
+
+    private HttpServletRequest headerRequest(final byte[] header, final long declaredSize) {
+        final var request = new MockHttpServletRequest();
+        request.setContentType(MediaType.MULTIPART_FORM_DATA_VALUE);
+        request.addPart(new MockPart("header", header) {
+            @Override
+            public long getSize() {
+                return declaredSize;
+            }
+        });
+        return request;
+    }
+
+    private HttpServletRequest request(final Message header) throws IOException {
+        final var request = new MockHttpServletRequest();
+        request.setContentType(MediaType.MULTIPART_FORM_DATA_VALUE);
+        request.addPart(new MockPart("header", serializer.serialize(header).getBytes()));
+        return request;
+    }
+
 }
@@ -0,0 +1,370 @@
+package de.fraunhofer.isst.ids.framework.messaging.handling;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fraunhofer.iais.eis.ArtifactRequestMessage;
+import de.fraunhofer.iais.eis.ConfigurationModel;
+import de.fraunhofer.iais.eis.Connector;
+import de.fraunhofer.iais.eis.ConnectorDeployMode;
+import de.fraunhofer.iais.eis.DescriptionRequestMessage;
+import de.fraunhofer.iais.eis.Message;
+import de.fraunhofer.iais.eis.NotificationMessage;
+import de.fraunhofer.iais.eis.RejectionReason;
+import de.fraunhofer.iais.eis.RequestMessage;
+import de.fraunhofer.isst.ids.framework.configuration.ConfigurationContainer;
+import de.fraunhofer.isst.ids.framework.daps.ClaimsException;
+import de.fraunhofer.isst.ids.framework.daps.DapsValidator;
+import de.fraunhofer.isst.ids.framework.messaging.model.filters.PreDispatchingFilter;
+import de.fraunhofer.isst.ids.framework.messaging.model.filters.PreDispatchingFilterResult;
+import de.fraunhofer.isst.ids.framework.messaging.model.filters.PreProcessingException;
+import de.fraunhofer.isst.ids.framework.messaging.model.messages.AsyncMessageHandler;
+import de.fraunhofer.isst.ids.framework.messaging.model.messages.MessageHandler;
+import de.fraunhofer.isst.ids.framework.messaging.model.messages.MessageHandlingException;
+import de.fraunhofer.isst.ids.framework.messaging.model.messages.MessagePayload;
+import de.fraunhofer.isst.ids.framework.messaging.model.messages.SupportedMessageType;
+import de.fraunhofer.isst.ids.framework.messaging.model.responses.ErrorResponse;
+import de.fraunhofer.isst.ids.framework.messaging.model.responses.MessageResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationContext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test handler resolution, filter ordering and concurrent filters of the MessageDispatcher
+ */
+public class MessageDispatcherTest {
+
+    private static final MessageResponse RESPONSE = Mockito.mock(MessageResponse.class);
+
+    private ConfigurationContainer configurationContainer;
+    private RequestHandlerResolver resolver;
+    private ExecutorService executor;
+
+    /**
+     * Create a configuration in TEST_DEPLOYMENT mode (skipping the DAT verification) and a resolver finding the
+     * {@link RequestHandler}
+     */
+    @Before
+    public void setUp() {
+        final var configModel = Mockito.mock(ConfigurationModel.class);
+        Mockito.when(configModel.getConnectorDeployMode()).thenReturn(ConnectorDeployMode.TEST_DEPLOYMENT);
+        final var connector = Mockito.mock(Connector.class);
+        Mockito.when(connector.getId()).thenReturn(URI.create("https://connector.example.com"));
+        Mockito.when(connector.getOutboundModelVersion()).thenReturn("4.0.0");
+        configurationContainer = Mockito.mock(ConfigurationContainer.class);
+        Mockito.when(configurationContainer.getConfigModel()).thenReturn(configModel);
+        Mockito.when(configurationContainer.getConnector()).thenReturn(connector);
+
+        final var appContext = Mockito.mock(ApplicationContext.class);
+        Mockito.when(appContext.getBeanNamesForAnnotation(Mockito.any())).thenReturn(new String[0]);
+        Mockito.when(appContext.getBeanNamesForAnnotation(SupportedMessageType.class)).thenReturn(new String[]{"handler"});
+        Mockito.doReturn(RequestHandler.class).when(appContext).getType("handler");
+        Mockito.when(appContext.getBean("handler", MessageHandler.class)).thenReturn(new RequestHandler());
+        resolver = new SpringRequestHandlerResolver(appContext);
+
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    /**
+     * Stop the filter executor
+     */
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Handlers are resolved through the type hierarchy of the message, unsupported types are rejected
+     *
+     * @throws PreProcessingException if a filter fails
+     */
+    @Test
+    public void testResolveHandler() throws PreProcessingException {
+        final var dispatcher = dispatcher(null);
+        assertSame(RESPONSE, dispatcher.process(Mockito.mock(DescriptionRequestMessage.class), null));
+
+        final var rejection = dispatcher.process(Mockito.mock(NotificationMessage.class), null);
+        assertTrue(rejection instanceof ErrorResponse);
+        assertEquals(RejectionReason.MESSAGE_TYPE_NOT_SUPPORTED,
+                     ((ErrorResponse) rejection).getRejectionMessage().getRejectionReason());
+    }
+
+    /**
+     * A handler annotated with several message types handles all of them
+     *
+     * @throws PreProcessingException if a filter fails
+     */
+    @Test
+    public void testMultiTypeHandler() throws PreProcessingException {
+        final var appContext = Mockito.mock(ApplicationContext.class);
+        Mockito.when(appContext.getBeanNamesForAnnotation(Mockito.any())).thenReturn(new String[0]);
+        Mockito.when(appContext.getBeanNamesForAnnotation(SupportedMessageType.class)).thenReturn(new String[]{"multi"});
+        Mockito.doReturn(MultiTypeHandler.class).when(appContext).getType("multi");
+        Mockito.when(appContext.getBean("multi", MessageHandler.class)).thenReturn(new MultiTypeHandler());
+        final var dispatcher = new MessageDispatcher(new ObjectMapper(), new SpringRequestHandlerResolver(appContext),
+                                                     Mockito.mock(DapsValidator.class), configurationContainer, null);
+
+        assertSame(RESPONSE, dispatcher.process(Mockito.mock(ArtifactRequestMessage.class), null));
+        assertSame(RESPONSE, dispatcher.process(Mockito.mock(DescriptionRequestMessage.class), null));
+        final var rejection = dispatcher.process(Mockito.mock(RequestMessage.class), null);
+        assertTrue(rejection instanceof ErrorResponse);
+        assertEquals(RejectionReason.MESSAGE_TYPE_NOT_SUPPORTED,
+                     ((ErrorResponse) rejection).getRejectionMessage().getRejectionReason());
+    }
+
+    /**
+     * Filters run by order (stable for equal orders) and only for their message types, the first rejection
+     * stops the chain
+     *
+     * @throws PreProcessingException if a filter fails
+     */
+    @Test
+    public void testFilterOrder() throws PreProcessingException {
+        final var calls = new CopyOnWriteArrayList<String>();
+        final var dispatcher = dispatcher(null);
+        dispatcher.registerPreDispatchingAction(new TestFilter("late", 10, false, calls));
+        dispatcher.registerPreDispatchingAction(new TestFilter("default", 0, false, calls));
+        dispatcher.registerPreDispatchingAction(new TestFilter("early", -10, false, calls));
+        dispatcher.registerPreDispatchingAction(new TestFilter("notification", -5, false, calls) {
+            @Override
+            public List<Class<? extends Message>> getSupportedMessageTypes() {
+                return List.of(NotificationMessage.class);
+            }
+        });
+
+        assertSame(RESPONSE, dispatcher.process(Mockito.mock(RequestMessage.class), null));
+        assertEquals(List.of("early", "default", "late"), calls);
+
+        calls.clear();
+        dispatcher.registerPreDispatchingAction(new TestFilter("reject", -20, false, calls) {
+            @Override
+            public PreDispatchingFilterResult process(final Message in) {
+                super.process(in);
+                return PreDispatchingFilterResult.builder().withSuccess(false).withMessage("rejected").build();
+            }
+        });
+        assertTrue(dispatcher.process(Mockito.mock(RequestMessage.class), null) instanceof ErrorResponse);
+        assertEquals(List.of("reject"), calls);
+    }
+
+    /**
+     * A filter with a negative order rejects a message before the DatVerificationFilter (order 0) verifies its DAT,
+     * a filter with a positive order runs after it
+     *
+     * @throws Exception if a filter fails or the DAT cannot be parsed
+     */
+    @Test
+    public void testFilterBeforeDatVerification() throws Exception {
+        Mockito.when(configurationContainer.getConfigModel().getConnectorDeployMode())
+               .thenReturn(ConnectorDeployMode.PRODUCTIVE_DEPLOYMENT);
+        final var dapsValidator = Mockito.mock(DapsValidator.class);
+        Mockito.when(dapsValidator.getClaims(Mockito.any())).thenThrow(new ClaimsException("invalid DAT"));
+
+        final var calls = new CopyOnWriteArrayList<String>();
+        final var dispatcher = new MessageDispatcher(new ObjectMapper(), resolver, dapsValidator,
+                                                     configurationContainer, null);
+        dispatcher.registerPreDispatchingAction(new TestFilter("after", 1, false, calls));
+        dispatcher.registerPreDispatchingAction(new TestFilter("before", -1, false, calls) {
+            @Override
+            public PreDispatchingFilterResult process(final Message in) {
+                super.process(in);
+                return PreDispatchingFilterResult.builder().withSuccess(false).withMessage("rejected").build();
+            }
+        });
+
+        assertTrue(dispatcher.process(Mockito.mock(RequestMessage.class), null) instanceof ErrorResponse);
+        assertEquals(List.of("before"), calls);
+        Mockito.verify(dapsValidator, Mockito.never()).getClaims(Mockito.any());
+
+        calls.clear();
+        final var datFirst = new MessageDispatcher(new ObjectMapper(), resolver, dapsValidator,
+                                                   configurationContainer, null);
+        datFirst.registerPreDispatchingAction(new TestFilter("after", 1, false, calls));
+        assertTrue(datFirst.process(Mockito.mock(RequestMessage.class), null) instanceof ErrorResponse);
+        assertTrue(calls.isEmpty(), "Filter with positive order must not run after the DAT was rejected");
+        Mockito.verify(dapsValidator).getClaims(Mockito.any());
+    }
+
+    /**
+     * Independent filters run concurrently, the first rejection cancels the filters still running
+     *
+     * @throws Exception if the test is interrupted
+     */
+    @Test
+    public void testConcurrentFilters() throws Exception {
+        final var interrupted = new CountDownLatch(1);
+        final var dispatcher = dispatcher(executor);
+        dispatcher.registerPreDispatchingAction(new TestFilter("slow", 0, true, new CopyOnWriteArrayList<>()) {
+            @Override
+            public PreDispatchingFilterResult process(final Message in) {
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return PreDispatchingFilterResult.successResult();
+            }
+        });
+        dispatcher.registerPreDispatchingAction(new TestFilter("reject", 0, true, new CopyOnWriteArrayList<>()) {
+            @Override
+            public PreDispatchingFilterResult process(final Message in) {
+                return PreDispatchingFilterResult.builder().withSuccess(false).withMessage("rejected").build();
+            }
+        });
+
+        assertTrue(dispatcher.process(Mockito.mock(RequestMessage.class), null) instanceof ErrorResponse);
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS), "Running filter must be cancelled after a rejection");
+    }
+
+    /**
+     * Exceptions of filters are wrapped in PreProcessingExceptions, without executor all filters run in the
+     * calling thread
+     *
+     * @throws PreProcessingException if a filter fails
+     */
+    @Test
+    public void testFilterExceptionsAndSequentialFallback() throws PreProcessingException {
+        for (final var filterExecutor : new ExecutorService[]{executor, null}) {
+            final var dispatcher = dispatcher(filterExecutor);
+            dispatcher.registerPreDispatchingAction(new TestFilter("ok", 0, true, new CopyOnWriteArrayList<>()));
+            dispatcher.registerPreDispatchingAction(new TestFilter("failing", 0, true, new CopyOnWriteArrayList<>()) {
+                @Override
+                public PreDispatchingFilterResult process(final Message in) {
+                    throw new IllegalStateException("filter failed");
+                }
+            });
+            final var exception = assertThrows(PreProcessingException.class,
+                                               () -> dispatcher.process(Mockito.mock(RequestMessage.class), null));
+            assertTrue(exception.getCause() instanceof IllegalStateException);
+        }
+
+        final var threads = new CopyOnWriteArrayList<Thread>();
+        final var dispatcher = dispatcher(null);
+        for (var i = 0; i < 3; i++) {
+            dispatcher.registerPreDispatchingAction(new TestFilter("thread", 0, true, new CopyOnWriteArrayList<>()) {
+                @Override
+                public PreDispatchingFilterResult process(final Message in) {
+                    threads.add(Thread.currentThread());
+                    return PreDispatchingFilterResult.successResult();
+                }
+            });
+        }
+        assertSame(RESPONSE, dispatcher.process(Mockito.mock(RequestMessage.class), null));
+        assertEquals(List.of(Thread.currentThread(), Thread.currentThread(), Thread.currentThread()), threads);
+    }
+
+    /**
+     * AsyncMessageHandlers complete the returned stage, MessageHandlingExceptions are turned into rejections
+     *
+     * @throws Exception if a filter fails or the stage does not complete
+     */
+    @Test
+    public void testProcessAsync() throws Exception {
+        final var result = new CompletableFuture<MessageResponse>();
+        final AsyncMessageHandler<RequestMessage> handler = (header, payload) -> result;
+        final var asyncResolver = Mockito.mock(RequestHandlerResolver.class);
+        Mockito.doReturn(Optional.of(handler)).when(asyncResolver).resolveHandler(Mockito.any());
+        final var dispatcher = new MessageDispatcher(new ObjectMapper(), asyncResolver,
+                                                     Mockito.mock(DapsValidator.class), configurationContainer);
+
+        final var stage = dispatcher.processAsync(Mockito.mock(RequestMessage.class), null).toCompletableFuture();
+        assertFalse(stage.isDone(), "Stage must complete with the handler");
+        result.complete(RESPONSE);
+        assertSame(RESPONSE, stage.get(10, TimeUnit.SECONDS));
+
+        final var failed = new CompletableFuture<MessageResponse>();
+        final AsyncMessageHandler<RequestMessage> failing = (header, payload) -> failed;
+        Mockito.doReturn(Optional.of(failing)).when(asyncResolver).resolveHandler(Mockito.any());
+        final var rejection = dispatcher.processAsync(Mockito.mock(RequestMessage.class), null);
+        failed.completeExceptionally(new MessageHandlingException("handler failed"));
+        final var response = rejection.toCompletableFuture().get(10, TimeUnit.SECONDS);
+        assertTrue(response instanceof ErrorResponse);
+        assertEquals(RejectionReason.INTERNAL_RECIPIENT_ERROR,
+                     ((ErrorResponse) response).getRejectionMessage().getRejectionReason());
+
+        final AsyncMessageHandler<RequestMessage> throwing = (header, payload) ->
+                CompletableFuture.failedFuture(new IllegalStateException("handler failed"));
+        Mockito.doReturn(Optional.of(throwing)).when(asyncResolver).resolveHandler(Mockito.any());
+        final var exception = assertThrows(ExecutionException.class, () -> dispatcher
+                .processAsync(Mockito.mock(RequestMessage.class), null).toCompletableFuture().get(10, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof IllegalStateException,
+                   "Runtime exceptions must not be turned into rejections, like in the synchronous handling");
+    }
+
+    private MessageDispatcher dispatcher(final ExecutorService filterExecutor) {
+        return new MessageDispatcher(new ObjectMapper(), resolver, Mockito.mock(DapsValidator.class),
+                                     configurationContainer, filterExecutor);
+    }
+
+    /**
+     * Handler for all RequestMessages
+     */
+    @SupportedMessageType(RequestMessage.class)
+    public static class RequestHandler implements MessageHandler<RequestMessage> {
+        @Override
+        public MessageResponse handleMessage(final RequestMessage queryHeader, final MessagePayload payload) {
+            return RESPONSE;
+        }
+    }
+
+    /**
+     * Handler for ArtifactRequestMessages and DescriptionRequestMessages
+     */
+    @SupportedMessageType({ArtifactRequestMessage.class, DescriptionRequestMessage.class})
+    public static class MultiTypeHandler implements MessageHandler<RequestMessage> {
+        @Override
+        public MessageResponse handleMessage(final RequestMessage queryHeader, final MessagePayload payload) {
+            return RESPONSE;
+        }
+    }
+
+    /**
+     * Filter recording its calls
+     */
+    private static class TestFilter implements PreDispatchingFilter {
+        private final String name;
+        private final int order;
+        private final boolean independent;
+        private final List<String> calls;
+
+        TestFilter(final String name, final int order, final boolean independent, final List<String> calls) {
+            this.name = name;
+            this.order = order;
+            this.independent = independent;
+            this.calls = calls;
+        }
+
+        @Override
+        public PreDispatchingFilterResult process(final Message in) {
+            calls.add(name);
+            return PreDispatchingFilterResult.successResult();
+        }
+
+        @Override
+        public int getOrder() {
+            return order;
+        }
+
+        @Override
+        public boolean isIndependent() {
+            return independent;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package de.fraunhofer.isst.ids.framework.messaging.handling;
+
+import de.fraunhofer.iais.eis.ArtifactRequestMessage;
+import de.fraunhofer.iais.eis.DescriptionRequestMessage;
+import de.fraunhofer.iais.eis.Message;
+import de.fraunhofer.iais.eis.NotificationMessage;
+import de.fraunhofer.iais.eis.RequestMessage;
+import de.fraunhofer.iais.eis.ResponseMessage;
+import de.fraunhofer.isst.ids.framework.messaging.model.messages.MessageHandler;
+import de.fraunhofer.isst.ids.framework.messaging.model.messages.MessagePayload;
+import de.fraunhofer.isst.ids.framework.messaging.model.messages.SupportedMessageType;
+import de.fraunhofer.isst.ids.framework.messaging.model.messages.SupportedMessageTypes;
+import de.fraunhofer.isst.ids.framework.messaging.model.responses.MessageResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Test resolving message handlers with single, multiple and repeated supported message types
+ */
+public class SpringRequestHandlerResolverTest {
+
+    private final MultiTypeHandler multiTypeHandler = new MultiTypeHandler();
+    private final RepeatedHandler repeatedHandler = new RepeatedHandler();
+    private final GenericRequestHandler genericHandler = new GenericRequestHandler();
+
+    private ApplicationContext appContext;
+    private SpringRequestHandlerResolver resolver;
+
+    /**
+     * Create an application context containing the generic and the repeated handler
+     */
+    @Before
+    public void setUp() {
+        appContext = Mockito.mock(ApplicationContext.class);
+        Mockito.when(appContext.getBeanNamesForAnnotation(SupportedMessageType.class)).thenReturn(new String[]{"generic"});
+        Mockito.when(appContext.getBeanNamesForAnnotation(SupportedMessageTypes.class)).thenReturn(new String[]{"repeated"});
+        bean("generic", genericHandler);
+        bean("repeated", repeatedHandler);
+        resolver = new SpringRequestHandlerResolver(appContext);
+    }
+
+    /**
+     * All types of a multi-type and of a repeated annotation are registered, a handler for the exact type takes
+     * precedence over a handler for its superinterface
+     */
+    @Test
+    public void testMultipleTypes() {
+        addMultiTypeHandler();
+        resolver.onApplicationEvent(new ContextRefreshedEvent(appContext));
+
+        assertSame(multiTypeHandler, resolver.resolveHandler(ArtifactRequestMessage.class).orElseThrow());
+        assertSame(multiTypeHandler, resolver.resolveHandler(DescriptionRequestMessage.class).orElseThrow());
+        assertSame(multiTypeHandler, resolver.resolveHandler(CustomDescriptionRequestMessage.class).orElseThrow(),
+                   "Handler of the nearest supertype must be used");
+        assertSame(genericHandler, resolver.resolveHandler(RequestMessage.class).orElseThrow());
+        assertSame(genericHandler, resolver.resolveHandler(CustomRequestMessage.class).orElseThrow());
+
+        assertSame(repeatedHandler, resolver.resolveHandler(NotificationMessage.class).orElseThrow());
+        assertSame(repeatedHandler, resolver.resolveHandler(ResponseMessage.class).orElseThrow());
+        assertFalse(resolver.resolveHandler(Message.class).isPresent());
+    }
+
+    /**
+     * Resolved handlers are cached until the application context of the resolver is refreshed
+     */
+    @Test
+    public void testRefresh() {
+        assertSame(genericHandler, resolver.resolveHandler(DescriptionRequestMessage.class).orElseThrow());
+
+        addMultiTypeHandler();
+        assertSame(genericHandler, resolver.resolveHandler(DescriptionRequestMessage.class).orElseThrow());
+
+        resolver.onApplicationEvent(new ContextRefreshedEvent(Mockito.mock(ApplicationContext.class)));
+        assertSame(genericHandler, resolver.resolveHandler(DescriptionRequestMessage.class).orElseThrow(),
+                   "Refresh of another context must not rebuild the handlers");
+
+        resolver.onApplicationEvent(new ContextRefreshedEvent(appContext));
+        assertSame(multiTypeHandler, resolver.resolveHandler(DescriptionRequestMessage.class).orElseThrow());
+    }
+
+    private void addMultiTypeHandler() {
+        Mockito.when(appContext.getBeanNamesForAnnotation(SupportedMessageType.class))
+               .thenReturn(new String[]{"multi", "generic"});
+        bean("multi", multiTypeHandler);
+    }
+
+    private void bean(final String name, final MessageHandler<?> handler) {
+        Mockito.doReturn(handler.getClass()).when(appContext).getType(name);
+        Mockito.when(appContext.getBean(name, MessageHandler.class)).thenReturn(handler);
+    }
+
+    /**
+     * A description request message type not known to the resolver
+     */
+    public interface CustomDescriptionRequestMessage extends DescriptionRequestMessage {
+    }
+
+    /**
+     * A request message type not known to the resolver
+     */
+    public interface CustomRequestMessage extends RequestMessage {
+    }
+
+    /**
+     * Handler supporting several message types in one annotation
+     */
+    @SupportedMessageType({ArtifactRequestMessage.class, DescriptionRequestMessage.class})
+    public static class MultiTypeHandler implements MessageHandler<RequestMessage> {
+        @Override
+        public MessageResponse handleMessage(final RequestMessage queryHeader, final MessagePayload payload) {
+            return null;
+        }
+    }
+
+    /**
+     * Handler supporting several message types in repeated annotations
+     */
+    @SupportedMessageType(NotificationMessage.class)
+    @SupportedMessageType(ResponseMessage.class)
+    public static class RepeatedHandler implements MessageHandler<Message> {
+        @Override
+        public MessageResponse handleMessage(final Message queryHeader, final MessagePayload payload) {
+            return null;
+        }
+    }
+
+    /**
+     * Handler supporting all request messages
+     */
+    @SupportedMessageType(RequestMessage.class)
+    public static class GenericRequestHandler implements MessageHandler<RequestMessage> {
+        @Override
+        public MessageResponse handleMessage(final RequestMessage queryHeader, final MessagePayload payload) {
+            return null;
+        }
+    }
+}